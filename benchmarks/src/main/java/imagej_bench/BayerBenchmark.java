@@ -0,0 +1,84 @@
+package imagej_bench;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import ij.ImagePlus;
+import imagej_billard.BayerProcessor;
+import imagej_common.PixelKernels;
+
+// De-Bayering of a raw frame into all four planes (gray, RGB, hue and
+// brightness), full resolution and binned
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = { "--add-modules", "jdk.incubator.vector", "-Djava.awt.headless=true", "-Dimagej.metrics=false" })
+public class BayerBenchmark {
+
+  @Param({ "synthetic:640x480", "synthetic:2048x1088", "synthetic:4096x2176", "img:Billard2048x1088x1.png" })
+  public String input;
+
+  private BayerProcessor processor;
+  private BayerProcessor scalarProcessor;
+  private byte[] gray, hue, brightness;
+  private int[] rgb;
+  private byte[] binnedGray, binnedHue, binnedBrightness;
+  private int[] binnedRgb;
+
+  @Setup
+  public void setup() {
+    ImagePlus raw = Inputs.bayer(input);
+    int width = raw.getWidth(), height = raw.getHeight();
+    byte[] pixels = (byte[]) raw.getProcessor().getPixels();
+
+    processor = new BayerProcessor(pixels, width, height);
+    processor.setIntegerHsb(true);
+    scalarProcessor = new BayerProcessor(pixels, width, height);
+    scalarProcessor.setIntegerHsb(true);
+    scalarProcessor.setKernels(PixelKernels.scalar());
+
+    int size = width * height;
+    gray = new byte[size];
+    rgb = new int[size];
+    hue = new byte[size];
+    brightness = new byte[size];
+    int binnedSize = (width / 2) * (height / 2);
+    binnedGray = new byte[binnedSize];
+    binnedRgb = new int[binnedSize];
+    binnedHue = new byte[binnedSize];
+    binnedBrightness = new byte[binnedSize];
+  }
+
+  // with the vector kernels if jdk.incubator.vector is available
+  @Benchmark
+  public int[] demosaic() {
+    processor.process(gray, rgb, hue, brightness);
+    return rgb;
+  }
+
+  @Benchmark
+  public int[] demosaicScalar() {
+    scalarProcessor.process(gray, rgb, hue, brightness);
+    return rgb;
+  }
+
+  @Benchmark
+  public int[] demosaicBinned() {
+    processor.processBinned(binnedGray, binnedRgb, binnedHue, binnedBrightness);
+    return binnedRgb;
+  }
+
+}
@@ -0,0 +1,32 @@
+package imagej_bench;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.openjdk.jmh.runner.options.ProfilerConfig;
+
+// JMH entry point of benchmarks.jar: same options as the JMH main class, but
+// always with the GC profiler, which reports the bytes allocated per
+// operation (gc.alloc.rate.norm) next to the timings
+public class BenchmarkMain {
+
+  public static void main(String[] args) throws Exception {
+    CommandLineOptions options = new CommandLineOptions(args);
+    if (options.shouldHelp() || options.shouldList() || options.shouldListWithParams() || options.shouldListProfilers() || options.shouldListResultFormats()) {
+      org.openjdk.jmh.Main.main(args);
+      return;
+    }
+
+    OptionsBuilder builder = new OptionsBuilder();
+    builder.parent(options);
+    boolean gc = false;
+    for (ProfilerConfig profiler : options.getProfilers()) {
+      gc |= profiler.getKlass().equals(GCProfiler.class.getName()) || profiler.getKlass().equals("gc");
+    }
+    if (!gc)
+      builder.addProfiler(GCProfiler.class);
+    new Runner(builder.build()).run();
+  }
+
+}
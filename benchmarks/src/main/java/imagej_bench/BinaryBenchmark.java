@@ -0,0 +1,95 @@
+package imagej_bench;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import ij.ImagePlus;
+import imagej_common.Kernel;
+import imagej_common.KernelFilter;
+import imagej_common.PixelKernels;
+import imagej_hough.BinaryTransform;
+import imagej_hough.EdgePoints;
+import imagej_hough.LaplaceTransform;
+
+// Threshold of the Laplace plane into a binary plane and the packed edge
+// point list, and the BinaryTransform stage on the RGB Laplace image
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = { "--add-modules", "jdk.incubator.vector", "-Djava.awt.headless=true", "-Dimagej.metrics=false" })
+public class BinaryBenchmark {
+
+  private static final int pixelClip = 2;
+
+  @Param({ "synthetic:640x480:0.01", "synthetic:2048x1088:0.01", "synthetic:2048x1088:0.1", "img:Shuttle2.png", "img:20130707-cst-2185.jpg" })
+  public String input;
+
+  @Param({ "220" })
+  public int threshold;
+
+  private ImagePlus laplaceImage;
+  private int width, height;
+  private byte[] laplace;
+  private byte[] binary;
+  private int[] points;
+  private int[] hits;
+
+  @Setup
+  public void setup() {
+    Inputs.quiet();
+    ImagePlus gray = Inputs.gray(input);
+    width = gray.getWidth();
+    height = gray.getHeight();
+    laplaceImage = new LaplaceTransform(gray).process(false);
+
+    KernelFilter filter = new KernelFilter(Kernel.laplacian());
+    filter.setMargin(pixelClip);
+    laplace = new byte[width * height];
+    filter.apply((byte[]) gray.getProcessor().getPixels(), width, height, laplace);
+    binary = new byte[width * height];
+    points = new int[width * height];
+    hits = new int[width];
+  }
+
+  @Benchmark
+  public int threshold() {
+    return threshold(PixelKernels.get());
+  }
+
+  @Benchmark
+  public int thresholdScalar() {
+    return threshold(PixelKernels.scalar());
+  }
+
+  @Benchmark
+  public ImagePlus stage() {
+    return new BinaryTransform(laplaceImage, threshold).process(false);
+  }
+
+  // same loop as BinaryTransform.run()
+  private int threshold(PixelKernels kernels) {
+    int xC = width / 2, yC = height / 2;
+    int count = 0;
+    for (int y = pixelClip; y < height - pixelClip; y++) {
+      int found = kernels.threshold(laplace, y * width + pixelClip, width - 2 * pixelClip, threshold, binary, hits);
+      for (int i = 0; i < found; i++) {
+        points[count++] = EdgePoints.pack(pixelClip + hits[i] - xC, y - yC);
+      }
+    }
+    return count;
+  }
+
+}
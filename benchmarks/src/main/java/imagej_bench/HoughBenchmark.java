@@ -0,0 +1,109 @@
+package imagej_bench;
+
+import java.awt.Color;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import ij.ImagePlus;
+import imagej_hough.BinaryTransform;
+import imagej_hough.HoughAccumulator;
+import imagej_hough.HoughPeaks;
+import imagej_hough.HoughPipeline;
+import imagej_hough.HoughTransform;
+import imagej_hough.LaplaceTransform;
+
+// Hough voting (all angles and the deskew band of pi/4..pi/2), peak
+// extraction with non-maximum suppression, the HoughTransform stage (result
+// images discarded) and the pooled Laplace -> binary -> Hough pipeline
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = { "--add-modules", "jdk.incubator.vector", "-Djava.awt.headless=true", "-Dimagej.metrics=false" })
+public class HoughBenchmark {
+
+  private static final int nAng = 256;
+  private static final int nRad = 256;
+  private static final int nrLines = 16;
+  private static final int nonMaxR = 2;
+
+  @Param({ "synthetic:640x480:0.01", "synthetic:2048x1088:0.01", "synthetic:2048x1088:0.1", "img:Shuttle2.png", "img:20130707-cst-2185.jpg" })
+  public String input;
+
+  @Param({ "220" })
+  public int threshold;
+
+  private ImagePlus gray;
+  private ImagePlus binary;
+  private int[] points;
+  private HoughAccumulator accumulator;
+  private HoughAccumulator band;
+  private HoughPeaks peaks;
+  private int[] voted; // accumulator of all angles for the peak search
+  private int[] peakAng = new int[nrLines];
+  private int[] peakRad = new int[nrLines];
+  private HoughPipeline pipeline;
+
+  @Setup
+  public void setup() {
+    Inputs.quiet();
+    gray = Inputs.gray(input);
+    BinaryTransform binaryTransform = new BinaryTransform(new LaplaceTransform(gray).process(false), threshold);
+    binary = binaryTransform.process(false);
+    points = binaryTransform.getEdgePoints();
+
+    int width = gray.getWidth(), height = gray.getHeight();
+    accumulator = new HoughAccumulator(width, height, nAng, nRad);
+    band = new HoughAccumulator(width, height, nAng, nRad, nAng / 4 - nonMaxR, nAng / 2 + nonMaxR);
+    peaks = new HoughPeaks(nAng, nRad, nonMaxR, true);
+    HoughAccumulator filled = new HoughAccumulator(width, height, nAng, nRad);
+    filled.vote(points);
+    voted = filled.getAccumulator();
+
+    pipeline = new HoughPipeline(new HoughTransform(nrLines, Math.PI / 4, Math.PI / 2, nonMaxR), threshold);
+  }
+
+  @Benchmark
+  public int vote() {
+    accumulator.clear();
+    accumulator.vote(points);
+    return accumulator.getMaxAccum();
+  }
+
+  @Benchmark
+  public int voteBand() {
+    band.clear();
+    band.vote(points);
+    return band.getMaxAccum();
+  }
+
+  @Benchmark
+  public int peaks() {
+    return peaks.find(voted, 0, nAng, nrLines, peakAng, peakRad);
+  }
+
+  @Benchmark
+  public ImagePlus stage() {
+    HoughTransform hough = new HoughTransform(binary, gray, nrLines, Math.PI / 4, Math.PI / 2, nonMaxR, Color.RED, Color.BLUE);
+    hough.setEdgePoints(points);
+    return hough.process(false);
+  }
+
+  @Benchmark
+  public Object pipeline() {
+    return pipeline.process(gray);
+  }
+
+}
@@ -0,0 +1,131 @@
+package imagej_bench;
+
+import java.io.File;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.util.Random;
+
+import ij.ImagePlus;
+import ij.process.ByteProcessor;
+import ij.process.ImageConverter;
+import imagej_billard.CfaPattern;
+import imagej_common.AsyncImageWriter;
+
+// Benchmark inputs, given as a JMH parameter:
+// synthetic:<width>x<height>[:<density>]
+//   gray image of slight noise with random bright lines on density of the
+//   pixels (about half of the Laplace edge pixels), or a raw GBRG Bayer frame
+//   of colored balls on green cloth
+// img:<file name>
+//   sample image from img/ (or the folder given by -Dimagej.img)
+final class Inputs {
+
+  private static final long SEED = 42;
+
+  private Inputs() {
+  }
+
+  static ImagePlus load(String input) {
+    if (input.startsWith("img:")) {
+      File file = new File(System.getProperty("imagej.img", "img"), input.substring(4));
+      ImagePlus image = new ImagePlus(file.getPath());
+      if (image.getProcessor() == null)
+        throw new IllegalArgumentException("cannot open " + file.getAbsolutePath() + ", run from the repository root or set -Dimagej.img");
+      return image;
+    }
+    if (input.startsWith("synthetic:"))
+      return lines(width(input), height(input), density(input));
+    throw new IllegalArgumentException("unknown input " + input);
+  }
+
+  // 8-bit copy of the input
+  static ImagePlus gray(String input) {
+    ImagePlus image = load(input);
+    if (image.getType() != ImagePlus.GRAY8) {
+      ImageConverter ic = new ImageConverter(image);
+      ic.convertToGray8();
+    }
+    return image;
+  }
+
+  // raw 8-bit Bayer frame
+  static ImagePlus bayer(String input) {
+    if (input.startsWith("synthetic:"))
+      return mosaic(width(input), height(input));
+    ImagePlus image = load(input);
+    if (image.getType() != ImagePlus.GRAY8)
+      throw new IllegalArgumentException(input + " is not a raw 8-bit Bayer frame");
+    return image;
+  }
+
+  // The stages log every image and queue their results for writing; keep
+  // both out of the measurements
+  static void quiet() {
+    AsyncImageWriter.getShared().setDiscard(true);
+    System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+  }
+
+  private static ImagePlus lines(int width, int height, double density) {
+    Random random = new Random(SEED);
+    ByteProcessor ip = new ByteProcessor(width, height);
+    byte[] pixels = (byte[]) ip.getPixels();
+    for (int i = 0; i < pixels.length; i++) {
+      pixels[i] = (byte) (128 + random.nextInt(7) - 3);
+    }
+
+    ip.setColor(255);
+    long target = (long) (density * width * height);
+    for (long drawn = 0; drawn < target;) {
+      int x1 = random.nextInt(width), y1 = random.nextInt(height);
+      int x2 = random.nextInt(width), y2 = random.nextInt(height);
+      ip.drawLine(x1, y1, x2, y2);
+      drawn += Math.max(Math.abs(x2 - x1), Math.abs(y2 - y1)) + 1;
+    }
+    return new ImagePlus("synthetic_" + width + "x" + height, ip);
+  }
+
+  private static ImagePlus mosaic(int width, int height) {
+    Random random = new Random(SEED);
+    int radius = Math.max(4, width / 100);
+    int[][] balls = new int[16][]; // x, y, rgb
+    for (int i = 0; i < balls.length; i++) {
+      balls[i] = new int[] { random.nextInt(width), random.nextInt(height), random.nextInt(0x1000000) };
+    }
+
+    ByteProcessor ip = new ByteProcessor(width, height);
+    byte[] pixels = (byte[]) ip.getPixels();
+    for (int y = 0; y < height; y++) {
+      for (int x = 0; x < width; x++) {
+        int rgb = 0x3c8c3c; // cloth
+        for (int[] ball : balls) {
+          int dx = x - ball[0], dy = y - ball[1];
+          if (dx * dx + dy * dy <= radius * radius)
+            rgb = ball[2];
+        }
+        char color = CfaPattern.GBRG.colorAt(x, y);
+        int shift = (color == 'R') ? 16 : (color == 'G') ? 8 : 0;
+        int value = ((rgb >> shift) & 0xff) + random.nextInt(9) - 4;
+        pixels[y * width + x] = (byte) Math.min(255, Math.max(0, value));
+      }
+    }
+    return new ImagePlus("synthetic_bayer_" + width + "x" + height, ip);
+  }
+
+  private static String[] fields(String input) {
+    return input.substring("synthetic:".length()).split(":");
+  }
+
+  private static int width(String input) {
+    return Integer.parseInt(fields(input)[0].split("x")[0]);
+  }
+
+  private static int height(String input) {
+    return Integer.parseInt(fields(input)[0].split("x")[1]);
+  }
+
+  private static double density(String input) {
+    String[] fields = fields(input);
+    return (fields.length > 1) ? Double.parseDouble(fields[1]) : 0;
+  }
+
+}
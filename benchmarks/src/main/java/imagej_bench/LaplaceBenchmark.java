@@ -0,0 +1,73 @@
+package imagej_bench;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import ij.ImagePlus;
+import imagej_common.Kernel;
+import imagej_common.KernelFilter;
+import imagej_common.PixelKernels;
+import imagej_hough.LaplaceTransform;
+
+// Laplace filter on the gray plane, and the LaplaceTransform stage around it
+// (RGB result image, output discarded)
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = { "--add-modules", "jdk.incubator.vector", "-Djava.awt.headless=true", "-Dimagej.metrics=false" })
+public class LaplaceBenchmark {
+
+  @Param({ "synthetic:640x480:0.01", "synthetic:2048x1088:0.01", "synthetic:2048x1088:0.1", "img:Shuttle2.png", "img:20130707-cst-2185.jpg" })
+  public String input;
+
+  private ImagePlus image;
+  private byte[] pixels;
+  private byte[] laplace;
+  private KernelFilter filter;
+  private KernelFilter scalarFilter;
+
+  @Setup
+  public void setup() {
+    Inputs.quiet();
+    image = Inputs.gray(input);
+    pixels = (byte[]) image.getProcessor().getPixels();
+    laplace = new byte[pixels.length];
+
+    filter = new KernelFilter(Kernel.laplacian());
+    filter.setMargin(2);
+    scalarFilter = new KernelFilter(Kernel.laplacian());
+    scalarFilter.setMargin(2);
+    scalarFilter.setKernels(PixelKernels.scalar());
+  }
+
+  @Benchmark
+  public byte[] filter() {
+    filter.apply(pixels, image.getWidth(), image.getHeight(), laplace);
+    return laplace;
+  }
+
+  @Benchmark
+  public byte[] filterScalar() {
+    scalarFilter.apply(pixels, image.getWidth(), image.getHeight(), laplace);
+    return laplace;
+  }
+
+  @Benchmark
+  public ImagePlus stage() {
+    return new LaplaceTransform(image).process(false);
+  }
+
+}
@@ -0,0 +1,59 @@
+package imagej_billard;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+import imagej_common.PixelKernels;
+
+// De-Bayering with the vector kernels against the scalar kernels, for all
+// CFA patterns and frame widths that are no multiple of the lane count
+public class BayerProcessorTest {
+
+  @Test
+  public void vectorMatchesScalar() {
+    assertTrue(PixelKernels.get().isVectorized(), "tests must run with --add-modules jdk.incubator.vector");
+
+    Random random = new Random(3);
+    for (int[] size : new int[][] { { 6, 6 }, { 38, 10 }, { 70, 17 }, { 202, 12 } }) {
+      int width = size[0], height = size[1];
+      byte[] pixels = new byte[width * height];
+      random.nextBytes(pixels);
+
+      for (CfaPattern pattern : CfaPattern.values()) {
+        Planes expected = new Planes(width * height);
+        BayerProcessor scalar = new BayerProcessor(pixels, width, height);
+        scalar.setPattern(pattern);
+        scalar.setKernels(PixelKernels.scalar());
+        scalar.process(expected.gray, expected.rgb, expected.hue, expected.brightness);
+
+        Planes actual = new Planes(width * height);
+        BayerProcessor vector = new BayerProcessor(pixels, width, height);
+        vector.setPattern(pattern);
+        vector.process(actual.gray, actual.rgb, actual.hue, actual.brightness);
+
+        String where = width + "x" + height + " " + pattern;
+        assertArrayEquals(expected.gray, actual.gray, where);
+        assertArrayEquals(expected.rgb, actual.rgb, where);
+        assertArrayEquals(expected.hue, actual.hue, where);
+        assertArrayEquals(expected.brightness, actual.brightness, where);
+      }
+    }
+  }
+
+  private static class Planes {
+    byte[] gray, hue, brightness;
+    int[] rgb;
+
+    Planes(int size) {
+      gray = new byte[size];
+      hue = new byte[size];
+      brightness = new byte[size];
+      rgb = new int[size];
+    }
+  }
+
+}
@@ -0,0 +1,55 @@
+package imagej_common;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+// KernelFilter on the vector kernels against the scalar kernels, with image
+// and tile widths that are no multiple of the lane count
+public class KernelFilterTest {
+
+  private static final Kernel[] KERNELS = { Kernel.laplacian(), Kernel.sobelX(), Kernel.sobelY(), Kernel.gaussian(2), Kernel.gaussian(Kernel.MAX_GAUSSIAN_RADIUS),
+      Kernel.box(5), new Kernel(3, 5, new int[] { 1, -2, 3, 0, 4, 1, -1, 2, 2, 5, 0, -3, 1, 1, 1 }, 3) };
+
+  @Test
+  public void vectorMatchesScalar() {
+    Random random = new Random(7);
+    for (int[] size : new int[][] { { 13, 11 }, { 67, 23 }, { 131, 40 } }) {
+      int width = size[0], height = size[1];
+      byte[] src = new byte[width * height];
+      random.nextBytes(src);
+
+      for (Kernel kernel : KERNELS) {
+        for (KernelFilter.Border border : KernelFilter.Border.values()) {
+          for (int tileWidth : new int[] { 5, 19, 256 }) {
+            String where = width + "x" + height + ", kernel " + kernel.getWidth() + "x" + kernel.getHeight() + ", " + border + ", tile " + tileWidth;
+            KernelFilter scalar = filter(kernel, border, tileWidth, PixelKernels.scalar());
+            KernelFilter vector = filter(kernel, border, tileWidth, new VectorPixelKernels());
+
+            byte[] expectedBytes = new byte[src.length], actualBytes = new byte[src.length];
+            scalar.apply(src, width, height, expectedBytes);
+            vector.apply(src, width, height, actualBytes);
+            assertArrayEquals(expectedBytes, actualBytes, where);
+
+            int[] expectedInts = new int[src.length], actualInts = new int[src.length];
+            scalar.apply(src, width, height, expectedInts);
+            vector.apply(src, width, height, actualInts);
+            assertArrayEquals(expectedInts, actualInts, where);
+          }
+        }
+      }
+    }
+  }
+
+  private static KernelFilter filter(Kernel kernel, KernelFilter.Border border, int tileWidth, PixelKernels kernels) {
+    KernelFilter filter = new KernelFilter(kernel);
+    filter.setBorder(border);
+    filter.setMargin(1);
+    filter.setTileSize(tileWidth, 7);
+    filter.setKernels(kernels);
+    return filter;
+  }
+
+}
@@ -0,0 +1,121 @@
+package imagej_common;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+// The vector kernels must give exactly the results of the scalar ones, for
+// lengths below, at and above the lane count and for the loop tails
+public class PixelKernelsTest {
+
+  private static final int MAX_LENGTH = 150; // a few times the widest lanes (64 bytes)
+
+  private final PixelKernels scalar = new ScalarPixelKernels();
+  private final PixelKernels vector = new VectorPixelKernels();
+  private final Random random = new Random(42);
+
+  @Test
+  public void thresholdMatchesScalar() {
+    byte[] src = randomBytes(MAX_LENGTH + 8);
+    for (int threshold : new int[] { -1, 0, 1, 100, 127, 128, 200, 254, 255 }) {
+      for (int offset = 0; offset < 4; offset++) {
+        for (int length = 0; length <= MAX_LENGTH; length++) {
+          byte[] expectedDst = new byte[src.length];
+          byte[] actualDst = new byte[src.length];
+          Arrays.fill(expectedDst, (byte) 7);
+          Arrays.fill(actualDst, (byte) 7);
+          int[] expectedHits = new int[length];
+          int[] actualHits = new int[length];
+
+          int expected = scalar.threshold(src, offset, length, threshold, expectedDst, expectedHits);
+          int actual = vector.threshold(src, offset, length, threshold, actualDst, actualHits);
+          String where = "threshold " + threshold + ", offset " + offset + ", length " + length;
+          assertEquals(expected, actual, where);
+          assertArrayEquals(expectedDst, actualDst, where);
+          assertArrayEquals(Arrays.copyOf(expectedHits, expected), Arrays.copyOf(actualHits, actual), where);
+        }
+      }
+    }
+  }
+
+  @Test
+  public void thresholdInPlace() {
+    byte[] src = randomBytes(MAX_LENGTH);
+    byte[] expected = src.clone();
+    int[] hits = new int[MAX_LENGTH];
+    int count = scalar.threshold(expected, 0, MAX_LENGTH, 128, expected, hits);
+    assertEquals(count, vector.threshold(src, 0, MAX_LENGTH, 128, src, hits));
+    assertArrayEquals(expected, src);
+  }
+
+  @Test
+  public void weightedSumMatchesScalar() {
+    int[][] weightSets = { { 1, 1, 1 }, { -1, 0, 1 }, { 1, 2, 1 }, { 1, 4, 6, 4, 1 }, { -9 }, { 3, -7, 11, -2, 5, 1, 8 } };
+    int rowLength = 37;
+    int[] src = new int[(MAX_LENGTH + 8) * 8];
+    for (int i = 0; i < src.length; i++) {
+      src[i] = random.nextInt(256);
+    }
+
+    for (int[] weights : weightSets) {
+      for (int stride : new int[] { 1, rowLength }) {
+        for (boolean accumulate : new boolean[] { false, true }) {
+          for (int length = 0; length <= MAX_LENGTH; length++) {
+            int offset = length % 3;
+            int[] expected = new int[MAX_LENGTH + 4];
+            for (int i = 0; i < expected.length; i++) {
+              expected[i] = random.nextInt(1000) - 500;
+            }
+            int[] actual = expected.clone();
+
+            scalar.weightedSum(src, offset, stride, weights, expected, 2, length, accumulate);
+            vector.weightedSum(src, offset, stride, weights, actual, 2, length, accumulate);
+            assertArrayEquals(expected, actual, Arrays.toString(weights) + ", stride " + stride + ", accumulate " + accumulate + ", length " + length);
+          }
+        }
+      }
+    }
+  }
+
+  @Test
+  public void bayerRowMatchesScalar() {
+    int size = MAX_LENGTH + 2;
+    int[] up = randomPixels(size), row = randomPixels(size), down = randomPixels(size);
+    for (boolean greenFirst : new boolean[] { false, true }) {
+      for (boolean redRow : new boolean[] { false, true }) {
+        for (int from = 1; from <= 2; from++) {
+          for (int to = from; to <= size - 1; to++) {
+            int[] r1 = new int[size], g1 = new int[size], b1 = new int[size];
+            int[] r2 = new int[size], g2 = new int[size], b2 = new int[size];
+
+            scalar.bayerRow(up, row, down, from, to, greenFirst, redRow, r1, g1, b1);
+            vector.bayerRow(up, row, down, from, to, greenFirst, redRow, r2, g2, b2);
+            String where = "greenFirst " + greenFirst + ", redRow " + redRow + ", pixels " + from + ".." + to;
+            assertArrayEquals(r1, r2, where);
+            assertArrayEquals(g1, g2, where);
+            assertArrayEquals(b1, b2, where);
+          }
+        }
+      }
+    }
+  }
+
+  private byte[] randomBytes(int length) {
+    byte[] bytes = new byte[length];
+    random.nextBytes(bytes);
+    return bytes;
+  }
+
+  private int[] randomPixels(int length) {
+    int[] pixels = new int[length];
+    for (int i = 0; i < length; i++) {
+      pixels[i] = random.nextInt(256);
+    }
+    return pixels;
+  }
+
+}
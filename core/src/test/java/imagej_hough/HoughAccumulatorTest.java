@@ -0,0 +1,121 @@
+package imagej_hough;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.junit.jupiter.api.Test;
+
+import ij.ImagePlus;
+
+// Fixed point voting against Math.round((cx * cos + cy * sin) / dRad) in
+// double, for the full range and for angle bands
+public class HoughAccumulatorTest {
+
+  private static final int CLIP = 2;
+
+  @Test
+  public void bundledImagesMatchReference() {
+    for (String name : new String[] { "Polygon2.png", "Shuttle2.png" }) {
+      ImagePlus image = TestImages.openGray(name);
+      byte[] pixels = (byte[]) image.getProcessor().getPixels();
+      check(name, pixels, image.getWidth(), image.getHeight(), 256, 256);
+      check(name, pixels, image.getWidth(), image.getHeight(), 180, 301);
+    }
+  }
+
+  // 384 x 512 with 320 radii: rMax = 320 and dRad = 2, so odd cx at 0 deg,
+  // odd cy at 90 deg and cx = 2 (mod 4) at 60 deg end exactly on (or, due
+  // to cos / sin rounding, within an ulp of) a rounding boundary, where
+  // only the exact fallback gives the same radius as Math.round()
+  @Test
+  public void roundingTiesMatchReference() {
+    int width = 384, height = 512;
+    byte[] pixels = new byte[width * height];
+    for (int x = 0; x < width; x++) {
+      pixels[(height / 2) * width + x] = (byte) 255;
+      pixels[(height / 2 + 1) * width + x] = (byte) 255;
+    }
+    for (int y = 0; y < height; y++) {
+      pixels[y * width + width / 2] = (byte) 255;
+      pixels[y * width + width / 2 - 1] = (byte) 255;
+    }
+    Random random = new Random(11);
+    for (int i = 0; i < pixels.length / 10; i++) {
+      pixels[random.nextInt(pixels.length)] = (byte) 255;
+    }
+    check("ties", pixels, width, height, 180, 320);
+    check("ties", pixels, width, height, 360, 320);
+  }
+
+  private static void check(String name, byte[] pixels, int width, int height, int nAng, int nRad) {
+    int[] points = EdgePoints.collect(pixels, width, height, CLIP);
+    int[][] bands = { { 0, nAng }, { 0, nAng / 8 }, { nAng / 3, nAng / 2 + 1 }, { nAng - 5, nAng } };
+    ExecutorService executor = Executors.newFixedThreadPool(3);
+    try {
+      for (int[] band : bands) {
+        String where = name + " " + nAng + "x" + nRad + " band " + band[0] + ".." + band[1];
+        int[] expected = reference(pixels, width, height, nAng, nRad, band[0], band[1]);
+
+        HoughAccumulator rows = new HoughAccumulator(width, height, nAng, nRad, band[0], band[1]);
+        rows.vote(pixels, width, height, CLIP);
+        assertArrayEquals(expected, rows.getAccumulator(), where + " (pixels)");
+        assertEquals(max(expected), rows.getMaxAccum(), where + " (max)");
+
+        HoughAccumulator list = new HoughAccumulator(width, height, nAng, nRad, band[0], band[1]);
+        list.vote(points);
+        assertArrayEquals(expected, list.getAccumulator(), where + " (points)");
+
+        HoughAccumulator parallel = new HoughAccumulator(width, height, nAng, nRad, band[0], band[1]);
+        parallel.vote(pixels, width, height, CLIP, executor, 3);
+        assertArrayEquals(expected, parallel.getAccumulator(), where + " (parallel pixels)");
+
+        parallel.clear();
+        parallel.vote(points, executor, 3);
+        assertArrayEquals(expected, parallel.getAccumulator(), where + " (parallel points)");
+      }
+    } finally {
+      executor.shutdown();
+    }
+  }
+
+  private static int[] reference(byte[] pixels, int width, int height, int nAng, int nRad, int angFrom, int angTo) {
+    int xC = width / 2, yC = height / 2;
+    double dAng = Math.PI / nAng;
+    double rMax = Math.sqrt(xC * xC + yC * yC);
+    double dRad = (2 * rMax) / nRad;
+    int nBand = angTo - angFrom;
+    double[] cos = new double[nBand], sin = new double[nBand];
+    for (int t = 0; t < nBand; t++) {
+      cos[t] = Math.cos(dAng * (angFrom + t));
+      sin[t] = Math.sin(dAng * (angFrom + t));
+    }
+
+    int[] accum = new int[nBand * nRad];
+    for (int y = CLIP; y < height - CLIP; y++) {
+      for (int x = CLIP; x < width - CLIP; x++) {
+        if (pixels[y * width + x] == 0)
+          continue;
+        int cx = x - xC, cy = y - yC;
+        for (int t = 0; t < nBand; t++) {
+          int r = (int) Math.round((cx * cos[t] + cy * sin[t]) / dRad) + nRad / 2;
+          if (r >= 0 && r < nRad)
+            accum[t * nRad + r]++;
+        }
+      }
+    }
+    return accum;
+  }
+
+  private static int max(int[] values) {
+    int max = 0;
+    for (int value : values) {
+      max = Math.max(max, value);
+    }
+    return max;
+  }
+
+}
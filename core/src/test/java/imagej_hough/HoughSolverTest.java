@@ -0,0 +1,44 @@
+package imagej_hough;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import imagej_common.AsyncImageWriter;
+
+// Deskew angles of the bundled images, for the image chain and for the
+// pooled pipeline
+public class HoughSolverTest {
+
+  @BeforeAll
+  public static void discardImages() {
+    AsyncImageWriter.getShared().setDiscard(true);
+  }
+
+  @AfterAll
+  public static void writeImages() {
+    AsyncImageWriter.getShared().setDiscard(false);
+  }
+
+  // vote-weighted mean of the lines within DESKEW_TOLERANCE of the
+  // strongest one; a plain mean over all lines gave 17 and 40
+  @Test
+  public void deskewAngles() {
+    assertEquals(5, HoughSolver.deskew(TestImages.open("Shuttle2.png"), false), "Shuttle2");
+    assertEquals(41, HoughSolver.deskew(TestImages.open("Polygon2.png"), false), "Polygon2");
+  }
+
+  @Test
+  public void pipelineDeskewAngles() {
+    HoughPipeline pipeline = HoughSolver.createDeskewPipeline();
+    try {
+      assertEquals(5, HoughSolver.deskew(pipeline, TestImages.open("Shuttle2.png")), "Shuttle2");
+      assertEquals(41, HoughSolver.deskew(pipeline, TestImages.open("Polygon2.png")), "Polygon2");
+    } finally {
+      pipeline.close();
+    }
+  }
+
+}
@@ -0,0 +1,93 @@
+package imagej_hough;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+// Frame by frame updates against a HoughAccumulator / HoughPeaks run from
+// scratch on every frame: the votes, the local maxima after the partial
+// re-suppression and the ranked lines must be the same
+public class IncrementalHoughTest {
+
+  private static final int WIDTH = 120;
+  private static final int HEIGHT = 90;
+  private static final int CLIP = 2;
+  private static final int NANG = 90;
+  private static final int NRAD = 100;
+
+  @Test
+  public void fullRangeMatchesFromScratch() {
+    check(0, NANG, 2, 1);
+  }
+
+  @Test
+  public void bandMatchesFromScratch() {
+    check(10, 40, 2, 2);
+    check(60, NANG, 3, 3);
+  }
+
+  private static void check(int angFrom, int angTo, int nonMaxR, long seed) {
+    Random random = new Random(seed);
+    IncrementalHough incremental = new IncrementalHough(WIDTH, HEIGHT, CLIP, NANG, NRAD, angFrom, angTo, nonMaxR);
+    byte[] pixels = new byte[WIDTH * HEIGHT];
+    int nBand = angTo - angFrom;
+    int[] expAng = new int[NRAD], expRad = new int[NRAD];
+    int[] actAng = new int[NRAD], actRad = new int[NRAD];
+
+    for (int frame = 0; frame < 40; frame++) {
+      String where = "band " + angFrom + ".." + angTo + " frame " + frame;
+      if (frame == 30) {
+        Arrays.fill(pixels, (byte) 0);
+      } else if (frame == 0 || frame == 31) {
+        change(pixels, random, 6, 200);
+      } else if (frame % 2 == 0) {
+        change(pixels, random, 1, 50);
+      } else if (frame % 10 != 9) { // every tenth frame is unchanged
+        change(pixels, random, 0, 2); // narrow dirty ranges
+      }
+      incremental.update(pixels);
+
+      HoughAccumulator expected = new HoughAccumulator(WIDTH, HEIGHT, NANG, NRAD, angFrom, angTo);
+      expected.vote(pixels, WIDTH, HEIGHT, CLIP);
+      HoughPeaks peaks = new HoughPeaks(nBand, NRAD, nonMaxR, expected.isFullRange());
+      assertArrayEquals(expected.getAccumulator(), incremental.getAccumulator().getAccumulator(), where);
+      assertArrayEquals(peaks.suppress(expected.getAccumulator()), incremental.getSuppressed(), where + " (suppressed)");
+      assertEquals(expected.getMaxAccum(), incremental.getMaxAccum(), where + " (max)");
+
+      for (int[] window : new int[][] { { 0, nBand }, { 0, nBand / 2 }, { nBand / 3, nBand } }) {
+        for (int k : new int[] { 1, 5, 40 }) {
+          int found = peaks.find(expected.getAccumulator(), window[0], window[1], k, expAng, expRad);
+          int actual = incremental.getLines(window[0], window[1], k, actAng, actRad);
+          String lines = where + " lines " + window[0] + ".." + window[1] + " k " + k;
+          assertEquals(found, actual, lines);
+          assertArrayEquals(Arrays.copyOf(expAng, found), Arrays.copyOf(actAng, actual), lines + " (angles)");
+          assertArrayEquals(Arrays.copyOf(expRad, found), Arrays.copyOf(actRad, actual), lines + " (radii)");
+        }
+      }
+    }
+  }
+
+  // Set or clear nrLines lines and toggle nrPixels single pixels
+  private static void change(byte[] pixels, Random random, int nrLines, int nrPixels) {
+    for (int i = 0; i < nrLines; i++) {
+      byte value = random.nextBoolean() ? (byte) 255 : 0;
+      int x0 = random.nextInt(WIDTH), y0 = random.nextInt(HEIGHT);
+      int x1 = random.nextInt(WIDTH), y1 = random.nextInt(HEIGHT);
+      int steps = Math.max(Math.abs(x1 - x0), Math.abs(y1 - y0));
+      for (int s = 0; s <= steps; s++) {
+        int x = x0 + Math.round((float) (x1 - x0) * s / Math.max(steps, 1));
+        int y = y0 + Math.round((float) (y1 - y0) * s / Math.max(steps, 1));
+        pixels[y * WIDTH + x] = value;
+      }
+    }
+    for (int i = 0; i < nrPixels; i++) {
+      int index = random.nextInt(pixels.length);
+      pixels[index] = (pixels[index] == 0) ? (byte) 255 : 0;
+    }
+  }
+
+}
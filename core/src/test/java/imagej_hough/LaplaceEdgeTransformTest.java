@@ -0,0 +1,91 @@
+package imagej_hough;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.Random;
+
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import ij.ImagePlus;
+import ij.process.ByteProcessor;
+import imagej_common.AsyncImageWriter;
+
+// The fused Laplace + threshold pass against LaplaceTransform followed by
+// BinaryTransform at the threshold used by HoughSolver
+public class LaplaceEdgeTransformTest {
+
+  private static final int THRESHOLD = 220;
+  private static final int CLIP = 2;
+  private static final int ANY = Integer.MIN_VALUE;
+
+  @BeforeAll
+  public static void discardImages() {
+    AsyncImageWriter.getShared().setDiscard(true);
+  }
+
+  @AfterAll
+  public static void writeImages() {
+    AsyncImageWriter.getShared().setDiscard(false);
+  }
+
+  @Test
+  public void bundledImagesMatchTwoPasses() {
+    for (String name : new String[] { "Polygon2.png", "Shuttle2.png" }) {
+      check(TestImages.openGray(name));
+    }
+  }
+
+  // full range noise hits the threshold on every row and column, including
+  // the first and last ones inside the clip frame where the column sums
+  // start; low contrast noise keeps the Laplacian around the threshold
+  @Test
+  public void randomImagesMatchTwoPasses() {
+    Random random = new Random(20);
+    for (int[] size : new int[][] { { 5, 5 }, { 6, 6 }, { 7, 9 }, { 64, 48 }, { 301, 203 } }) {
+      int width = size[0], height = size[1];
+      for (int range : new int[] { 256, 64 }) {
+        byte[] pixels = new byte[width * height];
+        for (int i = 0; i < pixels.length; i++) {
+          pixels[i] = (byte) random.nextInt(range);
+        }
+        int[] points = check(new ImagePlus("random", new ByteProcessor(width, height, pixels)));
+
+        if (range == 256 && width > 2 * CLIP + 4 && height > 2 * CLIP + 4) {
+          String where = width + "x" + height;
+          int xC = width / 2, yC = height / 2;
+          assertTrue(contains(points, ANY, CLIP - yC), where + " first row");
+          assertTrue(contains(points, ANY, height - CLIP - 1 - yC), where + " last row");
+          assertTrue(contains(points, CLIP - xC, ANY), where + " first column");
+          assertTrue(contains(points, width - CLIP - 1 - xC, ANY), where + " last column");
+        }
+      }
+    }
+  }
+
+  private static int[] check(ImagePlus image) {
+    String where = image.getTitle() + " " + image.getWidth() + "x" + image.getHeight();
+    ImagePlus laplace = new LaplaceTransform(image).process(false);
+    BinaryTransform binary = new BinaryTransform(laplace, THRESHOLD);
+    binary.process(false);
+    int[] expected = binary.getEdgePoints();
+
+    byte[] pixels = (byte[]) image.getProcessor().getPixels();
+    int[] actual = LaplaceEdgeTransform.extract(pixels, image.getWidth(), image.getHeight(), THRESHOLD);
+    assertArrayEquals(expected, actual, where);
+    assertArrayEquals(expected, new LaplaceEdgeTransform(image, THRESHOLD).process(false), where + " (process)");
+    return actual;
+  }
+
+  // whether a point lies at x and y, either of which may be ANY
+  private static boolean contains(int[] points, int x, int y) {
+    for (int point : points) {
+      if ((x == ANY || EdgePoints.x(point) == x) && (y == ANY || EdgePoints.y(point) == y))
+        return true;
+    }
+    return false;
+  }
+
+}
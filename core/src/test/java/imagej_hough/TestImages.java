@@ -0,0 +1,36 @@
+package imagej_hough;
+
+import java.io.File;
+
+import ij.IJ;
+import ij.ImagePlus;
+import ij.process.ImageConverter;
+
+// Bundled images from img/ for the tests; surefire runs in core/, so img/ is
+// one level up
+final class TestImages {
+
+  private TestImages() {
+  }
+
+  static ImagePlus open(String name) {
+    File file = new File("../img", name);
+    if (!file.isFile())
+      file = new File("img", name);
+    ImagePlus image = IJ.openImage(file.getPath());
+    if (image == null)
+      throw new IllegalStateException("cannot open " + file);
+    return image;
+  }
+
+  // 8-bit gray copy, converted like the transforms do
+  static ImagePlus openGray(String name) {
+    ImagePlus image = open(name);
+    if (image.getType() != ImagePlus.GRAY8) {
+      ImageConverter ic = new ImageConverter(image);
+      ic.convertToGray8();
+    }
+    return image;
+  }
+
+}
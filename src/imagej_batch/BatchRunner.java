@@ -0,0 +1,187 @@
+package imagej_batch;
+
+import java.io.File;
+import java.io.FileFilter;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import ij.ImagePlus;
+import imagej_billard.BillardTracker;
+import imagej_common.AsyncImageWriter;
+import imagej_common.Metrics;
+import imagej_hough.HoughPipeline;
+import imagej_hough.HoughSolver;
+
+// Headless batch processing of all images in a directory. Files are
+// processed concurrently on a worker pool without any GUI calls; results are
+// written to the output directory, by default out/ inside the input
+// directory. Only the input directory itself is read, so earlier results in
+// out/ are not processed again.
+//
+// Usage: BatchRunner <input directory> <hough|bayer> [threads] [output directory]
+// hough: Laplace -> binary -> Hough deskew on pooled buffers, writes
+//        <name>_deskewed.png
+// bayer: de-Bayers 8-bit raw frames, writes <name>_x1B.png, <name>_x3.png, ..
+public class BatchRunner {
+
+  public enum Pipeline {
+    HOUGH, BAYER
+  }
+
+  // Hough pipelines keep their buffers, one per worker thread
+  private static final ThreadLocal<HoughPipeline> houghPipelines = new ThreadLocal<HoughPipeline>() {
+    @Override
+    protected HoughPipeline initialValue() {
+      return HoughSolver.createDeskewPipeline();
+    }
+  };
+
+  private static final class Result {
+    String name;
+    long pixels;
+    long nanos;
+    Exception error;
+  }
+
+  public static void main(String[] args) throws Exception {
+    if (args.length < 2) {
+      System.err.println("usage: BatchRunner <input directory> <hough|bayer> [threads] [output directory]");
+      System.exit(1);
+    }
+    System.setProperty("java.awt.headless", "true");
+
+    File directory = new File(args[0]);
+    Pipeline pipeline = Pipeline.valueOf(args[1].toUpperCase());
+    int threads = (args.length > 2) ? Integer.parseInt(args[2]) : Runtime.getRuntime().availableProcessors();
+    File output = (args.length > 3) ? new File(args[3]) : new File(directory, "out");
+    if (output.getCanonicalFile().equals(directory.getCanonicalFile())) {
+      System.err.println("output directory must not be the input directory");
+      System.exit(1);
+    }
+
+    File[] files = directory.listFiles(new FileFilter() {
+      @Override
+      public boolean accept(File file) {
+        String name = file.getName().toLowerCase();
+        return file.isFile() && (name.endsWith(".png") || name.endsWith(".jpg") || name.endsWith(".tif") || name.endsWith(".bmp"));
+      }
+    });
+    if (files == null || files.length == 0) {
+      System.err.println("no images in " + directory);
+      System.exit(1);
+    }
+    Arrays.sort(files);
+
+    run(files, pipeline, threads, output);
+  }
+
+  public static void run(File[] files, final Pipeline pipeline, int threads, File output) throws Exception {
+    if (!output.isDirectory() && !output.mkdirs())
+      throw new IOException("cannot create output directory " + output);
+    String[] names = outputNames(files);
+
+    ExecutorService executor = Executors.newFixedThreadPool(threads);
+    List<Future<Result>> futures = new ArrayList<Future<Result>>();
+
+    long start = System.nanoTime();
+    for (int i = 0; i < files.length; i++) {
+      final File file = files[i];
+      final String prefix = new File(output, names[i]).getPath();
+      futures.add(executor.submit(new Callable<Result>() {
+        @Override
+        public Result call() {
+          return process(file, prefix, pipeline);
+        }
+      }));
+    }
+
+    long totalPixels = 0;
+    int failed = 0;
+    for (Future<Result> future : futures) {
+      Result result = future.get();
+      if (result.error != null) {
+        failed++;
+        System.out.println("[batch] " + result.name + ": failed: " + result.error);
+        continue;
+      }
+      totalPixels += result.pixels;
+      System.out.println(String.format("[batch] %s: %d ms, %.1f MPixel/s", result.name, result.nanos / 1000000, result.pixels * 1e3 / result.nanos));
+    }
+    executor.shutdown();
+    AsyncImageWriter.getShared().flush();
+
+    long nanos = System.nanoTime() - start;
+    System.out.println(String.format("[batch] %d files (%d failed) in %d ms: %.2f files/s, %.1f MPixel/s", files.length, failed, nanos / 1000000,
+        files.length * 1e9 / nanos, totalPixels * 1e3 / nanos));
+    Metrics.dump(System.out);
+  }
+
+  // Output base name of each file: the file name without extension, with the
+  // name of its directory in front if that name is already taken by an
+  // earlier file (files from different directories), and a number if it
+  // still is
+  private static String[] outputNames(File[] files) {
+    String[] names = new String[files.length];
+    Set<String> used = new HashSet<String>();
+    for (int i = 0; i < files.length; i++) {
+      String name = files[i].getName();
+      int dot = name.lastIndexOf('.');
+      if (dot > 0)
+        name = name.substring(0, dot);
+      File parent = files[i].getAbsoluteFile().getParentFile();
+      if (used.contains(name) && parent != null)
+        name = parent.getName() + "_" + name;
+      String unique = name;
+      for (int n = 1; used.contains(unique); n++) {
+        unique = name + "_" + n;
+      }
+      used.add(unique);
+      names[i] = unique;
+    }
+    return names;
+  }
+
+  // prefix: output directory and base name of the results
+  private static Result process(File file, String prefix, Pipeline pipeline) {
+    Result result = new Result();
+    result.name = file.getName();
+    long start = System.nanoTime();
+    try {
+      ImagePlus image = new ImagePlus(file.getPath());
+      if (image.getProcessor() == null)
+        throw new IllegalArgumentException("cannot open image");
+      result.pixels = (long) image.getWidth() * image.getHeight();
+
+      switch (pipeline) {
+      case HOUGH:
+        HoughSolver.deskew(houghPipelines.get(), image);
+        AsyncImageWriter.getShared().write(image, prefix + "_deskewed.png");
+        break;
+
+      case BAYER:
+        if (image.getBitDepth() != 8)
+          throw new IllegalArgumentException("raw Bayer frames must be 8-bit images");
+        BillardTracker tracker = new BillardTracker();
+        tracker.setThreads(1); // files are processed in parallel instead
+        tracker.setShowResult(false);
+        tracker.setOutputPrefix(prefix + "_");
+        tracker.setup("", image);
+        tracker.run(image.getProcessor());
+        break;
+      }
+    } catch (Exception e) {
+      result.error = e;
+    }
+    result.nanos = System.nanoTime() - start;
+    return result;
+  }
+
+}
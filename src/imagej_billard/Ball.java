@@ -0,0 +1,40 @@
+package imagej_billard;
+
+// Connected blob of ball-coloured pixels found by the BallDetector
+public class Ball {
+
+  private double x;
+  private double y;
+  private int area;
+
+  public Ball(double x, double y, int area) {
+    this.x = x;
+    this.y = y;
+    this.area = area;
+  }
+
+  // centroid
+  public double getX() {
+    return x;
+  }
+
+  public double getY() {
+    return y;
+  }
+
+  // number of pixels
+  public int getArea() {
+    return area;
+  }
+
+  // radius of a disc with the same area
+  public double getRadius() {
+    return Math.sqrt(area / Math.PI);
+  }
+
+  @Override
+  public String toString() {
+    return String.format("(%.1f, %.1f) area %d", x, y, area);
+  }
+
+}
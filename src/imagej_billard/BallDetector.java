@@ -0,0 +1,116 @@
+package imagej_billard;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+// Finds balls in the hue/brightness planes of a de-Bayered frame: pixels
+// within a hue range and above a brightness threshold are segmented, grouped
+// into 4-connected components and reported with their centroids
+public class BallDetector {
+
+  private int width;
+  private int height;
+  private int hueFrom = 0;
+  private int hueTo = 255;
+  private int minBrightness = 96;
+  private int minArea = 20;
+  private int maxArea = 20000;
+
+  private int[] visited; // pixel was labelled in pass "generation"
+  private int generation;
+  private int[] stack = new int[1024];
+
+  public BallDetector(int width, int height) {
+    this.width = width;
+    this.height = height;
+    this.visited = new int[width * height];
+  }
+
+  // Hue range of ball pixels (0..255, inclusive); a range with from > to wraps
+  // around red, e.g. 240..15
+  public void setHueRange(int from, int to) {
+    hueFrom = from;
+    hueTo = to;
+  }
+
+  public void setMinBrightness(int minBrightness) {
+    this.minBrightness = minBrightness;
+  }
+
+  // size limits of a ball in pixels
+  public void setAreaRange(int minArea, int maxArea) {
+    this.minArea = minArea;
+    this.maxArea = maxArea;
+  }
+
+  public List<Ball> detect(byte[] hue, byte[] brightness) {
+    return detect(hue, brightness, 0, 0, width, height);
+  }
+
+  // Search only the given rectangle (clipped to the frame); components are
+  // cut off at its border
+  public List<Ball> detect(byte[] hue, byte[] brightness, int x, int y, int regionWidth, int regionHeight) {
+    int fromX = Math.max(x, 0), toX = Math.min(x + regionWidth, width);
+    int fromY = Math.max(y, 0), toY = Math.min(y + regionHeight, height);
+    List<Ball> balls = new ArrayList<Ball>();
+
+    if (++generation == 0) { // counter wrapped around: reset marks
+      Arrays.fill(visited, 0);
+      generation = 1;
+    }
+
+    for (int py = fromY; py < toY; py++) {
+      for (int px = fromX; px < toX; px++) {
+        int index = py * width + px;
+        if (visited[index] == generation || !isBallPixel(hue, brightness, index))
+          continue;
+
+        // flood fill the component, summing coordinates for the centroid
+        long sumX = 0, sumY = 0;
+        int area = 0;
+        int top = 0;
+        stack[top++] = index;
+        visited[index] = generation;
+        while (top > 0) {
+          int i = stack[--top];
+          int cx = i % width, cy = i / width;
+          sumX += cx;
+          sumY += cy;
+          area++;
+
+          if (cx > fromX)
+            top = push(hue, brightness, i - 1, top);
+          if (cx < toX - 1)
+            top = push(hue, brightness, i + 1, top);
+          if (cy > fromY)
+            top = push(hue, brightness, i - width, top);
+          if (cy < toY - 1)
+            top = push(hue, brightness, i + width, top);
+        }
+
+        if (area >= minArea && area <= maxArea)
+          balls.add(new Ball((double) sumX / area, (double) sumY / area, area));
+      }
+    }
+    return balls;
+  }
+
+  private int push(byte[] hue, byte[] brightness, int index, int top) {
+    if (visited[index] == generation || !isBallPixel(hue, brightness, index))
+      return top;
+    if (top == stack.length)
+      stack = Arrays.copyOf(stack, 2 * stack.length);
+    visited[index] = generation;
+    stack[top] = index;
+    return top + 1;
+  }
+
+  private boolean isBallPixel(byte[] hue, byte[] brightness, int index) {
+    if ((brightness[index] & 0xff) < minBrightness)
+      return false;
+    int h = hue[index] & 0xff;
+    return (hueFrom <= hueTo) ? (h >= hueFrom && h <= hueTo) : (h >= hueFrom || h <= hueTo);
+  }
+
+}
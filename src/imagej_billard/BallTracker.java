@@ -0,0 +1,246 @@
+package imagej_billard;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+
+// Follows balls over consecutive frames. Each track predicts its next
+// position from its last motion, and only a small window around that
+// prediction is de-Bayered and searched. The full frame is processed only
+// while there are no tracks yet or when a track was not found in its
+// window, so the cost per frame grows with the number of balls instead of
+// the sensor size.
+public class BallTracker {
+
+  public static class Track {
+    private int id;
+    private double x, y; // last position
+    private double vx, vy; // motion per frame
+    private double radius;
+    private int misses; // consecutive frames without a match
+
+    Track(int id, Ball ball) {
+      this.id = id;
+      this.x = ball.getX();
+      this.y = ball.getY();
+      this.radius = ball.getRadius();
+    }
+
+    public int getId() {
+      return id;
+    }
+
+    public double getX() {
+      return x;
+    }
+
+    public double getY() {
+      return y;
+    }
+
+    public double getVelocityX() {
+      return vx;
+    }
+
+    public double getVelocityY() {
+      return vy;
+    }
+
+    public double getRadius() {
+      return radius;
+    }
+
+    public boolean isLost() {
+      return misses > 0;
+    }
+
+    void update(Ball ball) {
+      vx = ball.getX() - x;
+      vy = ball.getY() - y;
+      x = ball.getX();
+      y = ball.getY();
+      radius = ball.getRadius();
+      misses = 0;
+    }
+
+    @Override
+    public String toString() {
+      return String.format("#%d (%.1f, %.1f)", id, x, y);
+    }
+  }
+
+  // candidate blob of a track, at distance from the track's prediction
+  private static class Match {
+    Track track;
+    Ball ball;
+    double distance;
+
+    Match(Track track, Ball ball, double distance) {
+      this.track = track;
+      this.ball = ball;
+      this.distance = distance;
+    }
+  }
+
+  private BallDetector detector;
+  private List<Track> tracks = new ArrayList<Track>();
+  private int nextId;
+  private int margin = 8; // search window margin around the ball in pixels
+  private double maxDistance = 80; // max. jump of a lost ball when re-detected
+  private int maxMisses = 10; // frames after which a lost track is dropped
+  private int fullSearches;
+  private ExecutorService executor; // de-Bayers full-frame searches in bands
+  private int nrBands = 1;
+
+  public BallTracker(BallDetector detector) {
+    this.detector = detector;
+  }
+
+  public void setMargin(int margin) {
+    this.margin = margin;
+  }
+
+  public void setMaxDistance(double maxDistance) {
+    this.maxDistance = maxDistance;
+  }
+
+  public void setMaxMisses(int maxMisses) {
+    this.maxMisses = maxMisses;
+  }
+
+  // De-Bayer full-frame searches in nrBands bands on the executor, see
+  // BayerProcessor.process(..., executor, nrBands); null: serially
+  public void setExecutor(ExecutorService executor, int nrBands) {
+    this.executor = executor;
+    this.nrBands = nrBands;
+  }
+
+  public List<Track> getTracks() {
+    return tracks;
+  }
+
+  // number of frames that needed a full-frame search
+  public int getFullSearches() {
+    return fullSearches;
+  }
+
+  // Locate all balls in the next frame. The hue and brightness planes are
+  // filled by the processor as needed, so only the searched windows hold
+  // valid data afterwards.
+  public List<Track> update(BayerProcessor processor, byte[] hue, byte[] brightness) {
+    List<Match> matches = new ArrayList<Match>();
+    for (Track track : tracks) {
+      int size = 2 * (int) Math.ceil(track.radius + Math.hypot(track.vx, track.vy) / 2) + 2 * margin + 1;
+      int x = (int) Math.round(track.x + track.vx) - size / 2;
+      int y = (int) Math.round(track.y + track.vy) - size / 2;
+
+      processor.processRegion(null, null, hue, brightness, x, y, size, size);
+      addMatches(track, detector.detect(hue, brightness, x, y, size, size), size, matches);
+    }
+
+    List<Track> matched = new ArrayList<Track>();
+    for (Match match : assign(matches)) {
+      matched.add(match.track);
+    }
+    List<Track> missing = new ArrayList<Track>();
+    for (Track track : tracks) {
+      if (!matched.contains(track)) {
+        track.misses++;
+        missing.add(track);
+      }
+    }
+
+    if (tracks.isEmpty() || !missing.isEmpty())
+      searchFrame(processor, hue, brightness, missing);
+
+    return tracks;
+  }
+
+  // Full-frame search: re-associate lost tracks with the nearest new blob and
+  // start tracks for blobs that are not near any known ball
+  private void searchFrame(BayerProcessor processor, byte[] hue, byte[] brightness, List<Track> missing) {
+    fullSearches++;
+    if (executor != null)
+      processor.process(null, null, hue, brightness, executor, nrBands);
+    else
+      processor.process(null, null, hue, brightness);
+    List<Ball> balls = detector.detect(hue, brightness);
+
+    // drop blobs belonging to balls that were already found in their window
+    for (Iterator<Ball> it = balls.iterator(); it.hasNext();) {
+      Ball ball = it.next();
+      for (Track track : tracks) {
+        if (!track.isLost() && Math.hypot(ball.getX() - track.x, ball.getY() - track.y) <= track.radius + margin) {
+          it.remove();
+          break;
+        }
+      }
+    }
+
+    List<Match> matches = new ArrayList<Match>();
+    for (Track track : missing) {
+      addMatches(track, balls, maxDistance, matches);
+    }
+    for (Match match : assign(matches)) {
+      balls.remove(match.ball);
+    }
+
+    for (Iterator<Track> it = tracks.iterator(); it.hasNext();) {
+      if (it.next().misses > maxMisses)
+        it.remove();
+    }
+
+    for (Ball ball : balls) {
+      tracks.add(new Track(nextId++, ball));
+    }
+  }
+
+  // candidates of the track: blobs closer than maxDistance to its prediction
+  private static void addMatches(Track track, List<Ball> balls, double maxDistance, List<Match> matches) {
+    double x = track.x + track.vx, y = track.y + track.vy;
+    for (Ball ball : balls) {
+      double distance = Math.hypot(ball.getX() - x, ball.getY() - y);
+      if (distance < maxDistance)
+        matches.add(new Match(track, ball, distance));
+    }
+  }
+
+  // Give every track at most one blob and every blob to at most one track,
+  // closest predictions first, and update the tracks. Touching balls are in
+  // each other's windows, so the same blob can be a candidate of several
+  // tracks, found once per window; it is recognized by its centre lying
+  // within the radius of a blob already taken.
+  private static List<Match> assign(List<Match> matches) {
+    Collections.sort(matches, new Comparator<Match>() {
+      @Override
+      public int compare(Match a, Match b) {
+        return Double.compare(a.distance, b.distance);
+      }
+    });
+
+    List<Match> accepted = new ArrayList<Match>();
+    for (Match match : matches) {
+      if (isFree(match, accepted))
+        accepted.add(match);
+    }
+    for (Match match : accepted) {
+      match.track.update(match.ball);
+    }
+    return accepted;
+  }
+
+  private static boolean isFree(Match match, List<Match> accepted) {
+    for (Match other : accepted) {
+      if (other.track == match.track)
+        return false;
+      Ball taken = other.ball;
+      if (Math.hypot(match.ball.getX() - taken.getX(), match.ball.getY() - taken.getY()) < taken.getRadius())
+        return false;
+    }
+    return true;
+  }
+
+}
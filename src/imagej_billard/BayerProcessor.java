@@ -1,6 +1,16 @@
 package imagej_billard;
 
 import java.awt.Color;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+import imagej_common.Metrics;
+import imagej_common.PixelKernels;
 
 public class BayerProcessor {
 
@@ -9,14 +19,93 @@ public class BayerProcessor {
   private static float GREEN_WEIGHT = 0.587f;
   private static float BLUE_WEIGHT = 0.114f;
 
-  private byte[] pixels;
+  // Tables for the integer HSB mode. Brightness only depends on the largest
+  // channel; hue = 255 * n / (6 * delta) is computed as (n * m) >>> 32 with
+  // m = 2^32 / (6 * delta) rounded up, which is exact for all 8-bit inputs.
+  private static final byte[] BRIGHTNESS = new byte[MAX_VALUE + 1];
+  private static final long[] HUE_RECIPROCAL = new long[MAX_VALUE + 1];
+
+  static {
+    for (int value = 0; value <= MAX_VALUE; value++) {
+      BRIGHTNESS[value] = (byte) ((value / (float) MAX_VALUE) * MAX_VALUE);
+    }
+    for (int delta = 1; delta <= MAX_VALUE; delta++) {
+      HUE_RECIPROCAL[delta] = (1L << 32) / (6 * delta) + 1;
+    }
+  }
+
+  private ByteBuffer pixels;
   private int width;
   private int height;
+  private boolean integerHsb;
+  private CfaPattern pattern;
+  private PixelType[] pixelTypes; // pixel type by ((y & 1) << 1) | (x & 1)
+  private int[] quadOffsets; // red, blue, green, green offsets in a 2x2 quad
+  private PixelKernels kernels = PixelKernels.get();
 
   public BayerProcessor(byte[] pixels, int width, int height) {
-    this.pixels = pixels;
+    this(ByteBuffer.wrap(pixels), width, height);
+  }
+
+  // The frame starts at the buffer's position, so a region of a larger
+  // (e.g. memory-mapped) buffer can be processed without copying it
+  public BayerProcessor(ByteBuffer pixels, int width, int height) {
+    this(pixels, width, height, CfaPattern.GBRG);
+  }
+
+  public BayerProcessor(ByteBuffer pixels, int width, int height, CfaPattern pattern) {
     this.width = width;
     this.height = height;
+    setPixels(pixels);
+    setPattern(pattern);
+  }
+
+  // Interpolate the quads row by row with these kernels if they are
+  // vectorized; the scalar quad kernel is used otherwise
+  public void setKernels(PixelKernels kernels) {
+    this.kernels = kernels;
+  }
+
+  public void setPattern(CfaPattern pattern) {
+    this.pattern = pattern;
+    pixelTypes = new PixelType[4];
+    quadOffsets = new int[4];
+    int green = 2;
+    for (int i = 0; i < 4; i++) {
+      int x = i & 1, y = i >> 1;
+      switch (pattern.colorAt(x, y)) {
+      case 'R':
+        pixelTypes[i] = PixelType.RED;
+        quadOffsets[0] = y * width + x;
+        break;
+      case 'B':
+        pixelTypes[i] = PixelType.BLUE;
+        quadOffsets[1] = y * width + x;
+        break;
+      default: // green: blue or red neighbours in the same row
+        pixelTypes[i] = (pattern.colorAt(x + 1, y) == 'B') ? PixelType.GREEN_A : PixelType.GREEN_B;
+        quadOffsets[green++] = y * width + x;
+      }
+    }
+  }
+
+  public CfaPattern getPattern() {
+    return pattern;
+  }
+
+  // Compute the hue and brightness planes of process() with integer
+  // arithmetic instead of Color.RGBtoHSB. Brightness is identical, hue
+  // differs by at most 1 (out of 255) from the float version; see
+  // getIntegerHue()
+  public void setIntegerHsb(boolean integerHsb) {
+    this.integerHsb = integerHsb;
+  }
+
+  // Switch to another frame of the same size
+  public void setPixels(ByteBuffer pixels) {
+    if (pixels.remaining() < width * height)
+      throw new IllegalArgumentException("buffer holds less than " + width + "x" + height + " pixels");
+    this.pixels = pixels.slice();
   }
 
   public int getValue(int index) {
@@ -51,15 +140,338 @@ public class BayerProcessor {
     return (hsb[2] * MAX_VALUE);
   }
 
+  // De-Bayer the whole frame in a single sweep and fill all requested output
+  // planes (null planes are skipped), indexed like the raw pixels
+  public void process(byte[] gray, int[] rgbOut, byte[] hue, byte[] brightness) {
+    Metrics.Span span = Metrics.start("demosaic");
+    try {
+      processRows(gray, rgbOut, hue, brightness, 0, height);
+    } finally {
+      span.end((long) width * height);
+    }
+  }
+
+  // Same as process(), but the frame is split into horizontal bands (aligned
+  // to the 2x2 quads of processRows) which are de-Bayered concurrently on the
+  // executor
+  public void process(final byte[] gray, final int[] rgbOut, final byte[] hue, final byte[] brightness, ExecutorService executor, int nrBands) {
+    if (nrBands < 1)
+      throw new IllegalArgumentException("number of bands must be at least 1: " + nrBands);
+    int bandHeight = (height + nrBands - 1) / nrBands;
+    bandHeight += bandHeight % 2; // keep band starts on odd rows
+    if (nrBands <= 1 || bandHeight >= height) {
+      process(gray, rgbOut, hue, brightness);
+      return;
+    }
+
+    List<Callable<Void>> bands = new ArrayList<Callable<Void>>();
+    for (int y = 0; y < height; y = (y == 0) ? bandHeight + 1 : y + bandHeight) {
+      final int fromRow = y;
+      final int toRow = Math.min((y == 0) ? bandHeight + 1 : y + bandHeight, height);
+      bands.add(new Callable<Void>() {
+        @Override
+        public Void call() {
+          processRows(gray, rgbOut, hue, brightness, fromRow, toRow);
+          return null;
+        }
+      });
+    }
+
+    Metrics.Span span = Metrics.start("demosaic");
+    try {
+      for (Future<Void> band : executor.invokeAll(bands)) {
+        band.get();
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IllegalStateException("de-Bayering interrupted", e);
+    } catch (ExecutionException e) {
+      throw new IllegalStateException("de-Bayering failed", e.getCause());
+    } finally {
+      span.end((long) width * height);
+    }
+  }
+
+  // Binned de-Bayering: every 2x2 quad of the sensor becomes one output pixel
+  // taking red and blue from the quad's red and blue pixel and green as the
+  // mean of its two green pixels. The planes have (width / 2) x (height / 2)
+  // pixels; an odd last row or column is dropped. This needs no
+  // interpolation and touches every raw pixel exactly once.
+  public void processBinned(byte[] gray, int[] rgbOut, byte[] hue, byte[] brightness) {
+    Metrics.Span span = Metrics.start("demosaic.binned");
+    try {
+      Output out = new Output(gray, rgbOut, hue, brightness);
+      ByteBuffer p = pixels;
+      int red = quadOffsets[0], blue = quadOffsets[1], green1 = quadOffsets[2], green2 = quadOffsets[3];
+      int binnedWidth = width / 2;
+      int binnedHeight = height / 2;
+
+      int index = 0;
+      for (int y = 0; y < binnedHeight; y++) {
+        int quad = 2 * y * width;
+        for (int x = 0; x < binnedWidth; x++, index++, quad += 2) {
+          int g = ((p.get(quad + green1) & 0xff) + (p.get(quad + green2) & 0xff)) >> 1;
+          out.put(index, p.get(quad + red) & 0xff, g, p.get(quad + blue) & 0xff);
+        }
+      }
+    } finally {
+      span.end((long) width * height);
+    }
+  }
+
+  // Same as process(), but only de-Bayers the pixels inside the given
+  // rectangle (clipped to the frame). The planes are still full-frame sized
+  // and pixels outside the rectangle are left untouched.
+  public void processRegion(byte[] gray, int[] rgbOut, byte[] hue, byte[] brightness, int x, int y, int regionWidth, int regionHeight) {
+    int fromX = Math.max(x, 0), toX = Math.min(x + regionWidth, width);
+    int fromY = Math.max(y, 0), toY = Math.min(y + regionHeight, height);
+    if (fromX < toX && fromY < toY) {
+      Metrics.Span span = Metrics.start("demosaic.region");
+      try {
+        processRegion(new Output(gray, rgbOut, hue, brightness), fromX, fromY, toX, toY);
+      } finally {
+        span.end((long) (toX - fromX) * (toY - fromY));
+      }
+    }
+  }
+
+  // De-Bayer rows [fromRow, toRow); scratch buffers are local so that several
+  // bands can run at the same time
+  private void processRows(byte[] gray, int[] rgbOut, byte[] hue, byte[] brightness, int fromRow, int toRow) {
+    processRegion(new Output(gray, rgbOut, hue, brightness), 0, fromRow, width, toRow);
+  }
+
+  // De-Bayer the pixels [fromX, toX) x [fromY, toY). Interior pixels are
+  // processed in 2x2 quads starting on odd rows and on the column where the
+  // quad's top-left pixel is green. All neighbours of a quad exist and its
+  // layout is the same for the whole frame (up to swapping red and blue), so
+  // the quad kernel needs no edge checks and no per-pixel switch. The
+  // remaining pixels go through calculateRGB().
+  private void processRegion(Output out, int fromX, int fromY, int toX, int toY) {
+    int[] rgb = new int[3];
+
+    int quadFrom = (pattern.colorAt(1, 1) == 'G') ? 1 : 2; // first quad column of the frame
+    int quadTo = quadFrom + ((width - 1 - quadFrom) / 2) * 2; // after last quad column of the frame
+    int redMask = (pattern.colorAt(quadFrom + 1, 1) == 'R') ? -1 : 0; // odd rows hold red
+
+    // quad columns inside the region
+    if (fromX > quadFrom)
+      quadFrom = fromX + ((fromX - quadFrom) & 1);
+    quadTo = Math.min(quadTo, quadFrom + ((toX - quadFrom) / 2) * 2);
+
+    QuadRows quadRows = kernels.isVectorized() ? new QuadRows(quadFrom - 1, quadTo + 1) : null;
+
+    int y = fromY;
+    while (y < toY) {
+      boolean quadRow = (y & 1) == 1 && y + 1 < toY && y + 1 < height - 1 && quadFrom < quadTo;
+
+      for (int dy = 0; dy < (quadRow ? 2 : 1); dy++) {
+        int row = y + dy;
+        for (int x = fromX; x < (quadRow ? quadFrom : toX); x++) {
+          calculateRGB(x, row, rgb);
+          out.put(row * width + x, rgb[0], rgb[1], rgb[2]);
+        }
+        for (int x = quadRow ? quadTo : toX; x < toX; x++) {
+          calculateRGB(x, row, rgb);
+          out.put(row * width + x, rgb[0], rgb[1], rgb[2]);
+        }
+      }
+
+      if (quadRow && quadRows != null) {
+        processQuadRows(out, quadRows, y, quadFrom, quadTo, redMask != 0);
+        y += 2;
+      } else if (quadRow) {
+        processQuads(out, y, quadFrom, quadTo, redMask);
+        y += 2;
+      } else {
+        y++;
+      }
+    }
+  }
+
+  // Interpolates the quads with top-left corners (quadFrom, y), (quadFrom + 2,
+  // y), .. . Green sits at the top-left and bottom-right of each quad; the
+  // mask is -1 if the top row holds red and 0 if it holds blue, and selects
+  // which interpolated value ends up in which channel.
+  private void processQuads(Output out, int y, int quadFrom, int quadTo, int redMask) {
+    ByteBuffer p = pixels;
+    int w = width;
+
+    for (int x = quadFrom; x < quadTo; x += 2) {
+      int i = y * w + x; // top-left green
+      int j = i + w + 1; // bottom-right green
+
+      // green at (x, y): row neighbours are red if the mask is set
+      int h = ((p.get(i - 1) & 0xff) + (p.get(i + 1) & 0xff)) >> 1;
+      int v = ((p.get(i - w) & 0xff) + (p.get(i + w) & 0xff)) >> 1;
+      int sel = (h ^ v) & redMask;
+      out.put(i, v ^ sel, p.get(i) & 0xff, h ^ sel);
+
+      // red or blue at (x + 1, y)
+      int c = p.get(i + 1) & 0xff;
+      int d = ((p.get(i - w) & 0xff) + (p.get(i - w + 2) & 0xff) + (p.get(i + w) & 0xff) + (p.get(i + w + 2) & 0xff)) >> 2;
+      h = ((p.get(i) & 0xff) + (p.get(i + 2) & 0xff)) >> 1;
+      v = ((p.get(i + 1 - w) & 0xff) + (p.get(i + 1 + w) & 0xff)) >> 1;
+      sel = (c ^ d) & redMask;
+      out.put(i + 1, d ^ sel, (h + v) >> 1, c ^ sel);
+
+      // blue or red at (x, y + 1)
+      c = p.get(j - 1) & 0xff;
+      d = ((p.get(i - 1) & 0xff) + (p.get(i + 1) & 0xff) + (p.get(j + w - 2) & 0xff) + (p.get(j + w) & 0xff)) >> 2;
+      h = ((p.get(j - 2) & 0xff) + (p.get(j) & 0xff)) >> 1;
+      v = ((p.get(i) & 0xff) + (p.get(j + w - 1) & 0xff)) >> 1;
+      sel = (c ^ d) & redMask;
+      out.put(j - 1, c ^ sel, (h + v) >> 1, d ^ sel);
+
+      // green at (x + 1, y + 1): row neighbours are blue if the mask is set
+      h = ((p.get(j - 1) & 0xff) + (p.get(j + 1) & 0xff)) >> 1;
+      v = ((p.get(i + 1) & 0xff) + (p.get(j + w) & 0xff)) >> 1;
+      sel = (h ^ v) & redMask;
+      out.put(j, h ^ sel, p.get(j) & 0xff, v ^ sel);
+    }
+  }
+
+  // Same as processQuads(), but rows y and y + 1 are interpolated as a whole
+  // by the (vector) kernels, then stored pixel by pixel
+  private void processQuadRows(Output out, QuadRows rows, int y, int quadFrom, int quadTo, boolean redTop) {
+    rows.load(y - 1);
+    kernels.bayerRow(rows.get(y - 1), rows.get(y), rows.get(y + 1), quadFrom, quadTo, true, redTop, rows.red, rows.green, rows.blue);
+    for (int x = quadFrom, i = y * width + x; x < quadTo; x++, i++) {
+      out.put(i, rows.red[x], rows.green[x], rows.blue[x]);
+    }
+    kernels.bayerRow(rows.get(y), rows.get(y + 1), rows.get(y + 2), quadFrom, quadTo, false, !redTop, rows.red, rows.green, rows.blue);
+    for (int x = quadFrom, i = (y + 1) * width + x; x < quadTo; x++, i++) {
+      out.put(i, rows.red[x], rows.green[x], rows.blue[x]);
+    }
+  }
+
+  // Four consecutive raw rows as ints for processQuadRows(), columns [from,
+  // to). Rows that were already loaded for the previous quad row are kept.
+  private final class QuadRows {
+    private int from;
+    private int to;
+    private int[][] rows = new int[4][];
+    private int firstRow = Integer.MIN_VALUE; // raw row in rows[0]
+    int[] red = new int[width];
+    int[] green = new int[width];
+    int[] blue = new int[width];
+
+    QuadRows(int from, int to) {
+      this.from = from;
+      this.to = to;
+      for (int i = 0; i < rows.length; i++) {
+        rows[i] = new int[width];
+      }
+    }
+
+    // make rows [row, row + 4) available; rows only move down
+    void load(int row) {
+      for (int i = 0; i < rows.length; i++) {
+        int r = row + i;
+        int old = r - firstRow;
+        if (old >= 0 && old < rows.length && old != i) { // reuse, e.g. the lower two rows of the last quad row
+          int[] tmp = rows[i];
+          rows[i] = rows[old];
+          rows[old] = tmp;
+        } else if (old != i) {
+          widen(r, rows[i]);
+        }
+      }
+      firstRow = row;
+    }
+
+    int[] get(int row) {
+      return rows[row - firstRow];
+    }
+
+    private void widen(int row, int[] target) {
+      ByteBuffer p = pixels;
+      if (p.hasArray()) {
+        PixelKernels.widen(p.array(), p.arrayOffset() + row * width + from, to - from, target, from);
+      } else {
+        for (int x = from, i = row * width + from; x < to; x++, i++) {
+          target[x] = p.get(i) & 0xff;
+        }
+      }
+    }
+  }
+
+  // Writes the interpolated colour of a pixel into all requested planes
+  private final class Output {
+    private byte[] gray;
+    private int[] rgb;
+    private byte[] hue;
+    private byte[] brightness;
+    private boolean needsHsb;
+    private float[] hsb = new float[3];
+
+    Output(byte[] gray, int[] rgb, byte[] hue, byte[] brightness) {
+      this.gray = gray;
+      this.rgb = rgb;
+      this.hue = hue;
+      this.brightness = brightness;
+      this.needsHsb = hue != null || brightness != null;
+    }
+
+    void put(int index, int red, int green, int blue) {
+      if (gray != null) {
+        int value = (int) (RED_WEIGHT * red + GREEN_WEIGHT * green + BLUE_WEIGHT * blue);
+        gray[index] = (byte) Math.min(value, MAX_VALUE);
+      }
+      if (rgb != null) {
+        rgb[index] = (red << 16) + (green << 8) + blue;
+      }
+      if (needsHsb && integerHsb) {
+        int max = Math.max(red, Math.max(green, blue));
+        if (hue != null)
+          hue[index] = (byte) getIntegerHue(red, green, blue, max);
+        if (brightness != null)
+          brightness[index] = BRIGHTNESS[max];
+      } else if (needsHsb) {
+        Color.RGBtoHSB(red, green, blue, hsb);
+        if (hue != null)
+          hue[index] = (byte) (hsb[0] * MAX_VALUE);
+        if (brightness != null)
+          brightness[index] = (byte) (hsb[2] * MAX_VALUE);
+      }
+    }
+  }
+
+  // Hue scaled to 0..255 like getHue(), but with integer arithmetic. The
+  // result is floor(255 * h) of the exact hue h, while RGBtoHSB rounds its
+  // float intermediates, so both can differ by 1 when 255 * h is (close to)
+  // an integer.
+  static int getIntegerHue(int red, int green, int blue, int max) {
+    int min = Math.min(red, Math.min(green, blue));
+    int delta = max - min;
+    if (delta == 0)
+      return 0; // gray (also covers black, where saturation is 0)
+
+    int sixths; // hue * 6 * delta
+    if (red == max) {
+      sixths = green - blue;
+      if (sixths < 0)
+        sixths += 6 * delta;
+    } else if (green == max) {
+      sixths = 2 * delta + blue - red;
+    } else {
+      sixths = 4 * delta + red - green;
+    }
+    return (int) ((MAX_VALUE * sixths * HUE_RECIPROCAL[delta]) >>> 32);
+  }
+
   private int[] calculateRGB(int index) {
+    int[] rgb = new int[3];
+    calculateRGB(index % width, index / width, rgb);
+    return rgb;
+  }
+
+  private void calculateRGB(int x, int y, int[] rgb) {
 
-    int x = index % width;
-    int y = index / width;
     PixelType pixelType = getPixelType(x, y);
 
     // final color values
     int red = 0, green = 0, blue = 0;
-    int[] rgb = new int[3];
 
     switch (pixelType) {
     case GREEN_A:
@@ -90,7 +502,6 @@ public class BayerProcessor {
     rgb[0] = red;
     rgb[1] = green;
     rgb[2] = blue;
-    return rgb;
   }
 
   private int getMeanValueHorizontal(int x, int y) {
@@ -149,24 +560,12 @@ public class BayerProcessor {
   }
 
   private PixelType getPixelType(int x, int y) {
-    if (y % 2 == 0) { // even rows (0, 2, ..)
-      if (x % 2 == 0) {
-        return PixelType.GREEN_A;
-      } else {
-        return PixelType.BLUE;
-      }
-    } else { // odd rows (1, 3, ..)
-      if (x % 2 == 0) {
-        return PixelType.RED;
-      } else {
-        return PixelType.GREEN_B;
-      }
-    }
+    return pixelTypes[((y & 1) << 1) | (x & 1)];
   }
 
   private int getUnsignedValue(int x, int y) {
     int index = y * width + x;
-    byte rawValue = pixels[index];
+    byte rawValue = pixels.get(index);
     return (int) (rawValue & 0xff);
   }
 
@@ -1,13 +1,69 @@
 package imagej_billard;
 
+import java.io.File;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
 import ij.ImagePlus;
 import ij.gui.NewImage;
-import ij.plugin.PNG_Writer;
 import ij.plugin.filter.PlugInFilter;
 import ij.process.*;
+import imagej_common.AsyncImageWriter;
+import imagej_common.Metrics;
 
 public class BillardTracker implements PlugInFilter {
 
+  private int threads = Runtime.getRuntime().availableProcessors();
+  private ExecutorService executor;
+  private CfaPattern pattern = CfaPattern.GBRG;
+  private boolean binned;
+  private boolean showResult = true;
+  private boolean detect;
+  private String outputPrefix = "img/Billard1024x544";
+
+  // number of threads used for de-Bayering (1 = serial)
+  public void setThreads(int threads) {
+    if (threads < 1)
+      throw new IllegalArgumentException("threads must be >= 1");
+    if (threads != this.threads && executor != null) {
+      executor.shutdown();
+      executor = null;
+    }
+    this.threads = threads;
+  }
+
+  public int getThreads() {
+    return threads;
+  }
+
+  // produce half-resolution outputs by binning each 2x2 sensor quad
+  public void setBinned(boolean binned) {
+    this.binned = binned;
+  }
+
+  // show the de-Bayered images (off for headless use)
+  public void setShowResult(boolean showResult) {
+    this.showResult = showResult;
+  }
+
+  // also look for balls (BallDetector) and circles (CircleHough) in run();
+  // off by default, so run() only de-Bayers
+  public void setDetect(boolean detect) {
+    this.detect = detect;
+  }
+
+  // output files are named <prefix>x1B.png, <prefix>x3.png, ..
+  public void setOutputPrefix(String outputPrefix) {
+    this.outputPrefix = outputPrefix;
+  }
+
+  // colour filter layout of the camera sensor
+  public void setPattern(CfaPattern pattern) {
+    this.pattern = pattern;
+  }
+
   @Override
   public int setup(String arg, ImagePlus imp) {
     return DOES_8G;
@@ -16,11 +72,14 @@ public class BillardTracker implements PlugInFilter {
   @Override
   public void run(ImageProcessor ip1) {
 
-    int width = ip1.getWidth();
-    int height = ip1.getHeight();
     byte[] pixels = (byte[]) ip1.getPixels();
 
-    BayerProcessor bayerProcessor = new BayerProcessor(pixels, width, height);
+    BayerProcessor bayerProcessor = new BayerProcessor(pixels, ip1.getWidth(), ip1.getHeight());
+    bayerProcessor.setPattern(pattern);
+    bayerProcessor.setIntegerHsb(true);
+
+    int width = binned ? ip1.getWidth() / 2 : ip1.getWidth();
+    int height = binned ? ip1.getHeight() / 2 : ip1.getHeight();
 
     ImagePlus imgGray = NewImage.createByteImage("GrayDeBayered", width, height, 1, NewImage.FILL_BLACK);
     ImageProcessor ipGray = imgGray.getProcessor();
@@ -30,8 +89,6 @@ public class BillardTracker implements PlugInFilter {
     ImageProcessor ipRGB = imgRGB.getProcessor();
     int[] pixRGB = (int[]) ipRGB.getPixels();
 
-    long msStart = System.currentTimeMillis();
-
     ImagePlus imgHue = NewImage.createByteImage("Hue", width, height, 1, NewImage.FILL_BLACK);
     ImageProcessor ipHue = imgHue.getProcessor();
     byte[] pixHue = (byte[]) ipHue.getPixels();
@@ -40,45 +97,115 @@ public class BillardTracker implements PlugInFilter {
     ImageProcessor ipBrightness = imgBrightness.getProcessor();
     byte[] pixBrightness = (byte[]) ipBrightness.getPixels();
 
-    for (int i = 0; i < pixRGB.length; i++) {
-      pixGray[i] = (byte) bayerProcessor.getValue(i);
-      pixRGB[i] = bayerProcessor.getRGB(i);
-      pixHue[i] = (byte) bayerProcessor.getHue(i);
-      pixBrightness[i] = (byte) bayerProcessor.getBrightness(i);
+    if (binned) {
+      bayerProcessor.processBinned(pixGray, pixRGB, pixHue, pixBrightness);
+    } else if (threads > 1) {
+      bayerProcessor.process(pixGray, pixRGB, pixHue, pixBrightness, getExecutor(), threads);
+    } else {
+      bayerProcessor.process(pixGray, pixRGB, pixHue, pixBrightness);
     }
 
-    long ms = System.currentTimeMillis() - msStart;
-    System.out.println(ms);
     ImageStatistics stats = ipGray.getStatistics();
     System.out.println("Mean:" + stats.mean);
 
-    PNG_Writer png = new PNG_Writer();
-    try {
-      png.writeImage(imgGray, "img/Billard1024x544x1B.png", 0);
-      png.writeImage(imgRGB, "img/Billard1024x544x3.png", 0);
-      png.writeImage(imgHue, "img/Billard1024x544x1H.png", 0);
-      png.writeImage(imgBrightness, "img/Billard1024x544x1H.png", 0);
+    if (detect) {
+      BallDetector detector = new BallDetector(width, height);
+      for (Ball ball : detector.detect(pixHue, pixBrightness)) {
+        System.out.println("Ball " + ball);
+      }
+
+      // circles on the gray plane; ball radius is about 20 pixels at full size
+      CircleHough circleHough = new CircleHough(width, height);
+      if (binned)
+        circleHough.setRadiusRange(8, 14);
+      for (Ball ball : circleHough.detect(pixGray)) {
+        System.out.println("Circle " + ball);
+      }
+    }
+
+    AsyncImageWriter writer = AsyncImageWriter.getShared();
+    writer.write(imgGray, outputPrefix + "x1B.png");
+    writer.write(imgRGB, outputPrefix + "x3.png");
+    writer.write(imgHue, outputPrefix + "x1H.png");
+    writer.write(imgBrightness, outputPrefix + "x1V.png");
+
+    if (showResult) {
+      imgGray.show();
+      imgGray.updateAndDraw();
+      imgRGB.show();
+      imgRGB.updateAndDraw();
+      imgHue.show();
+      imgHue.updateAndDraw();
+      imgBrightness.show();
+      imgBrightness.updateAndDraw();
+    }
+  }
 
-    } catch (Exception e) {
-      e.printStackTrace();
+  private ExecutorService getExecutor() {
+    if (executor == null) {
+      executor = Executors.newFixedThreadPool(threads, new ThreadFactory() {
+        @Override
+        public Thread newThread(Runnable r) {
+          Thread thread = new Thread(r, "debayer");
+          thread.setDaemon(true);
+          return thread;
+        }
+      });
     }
+    return executor;
+  }
 
-    imgGray.show();
-    imgGray.updateAndDraw();
-    imgRGB.show();
-    imgRGB.updateAndDraw();
-    imgHue.show();
-    imgHue.updateAndDraw();
-    imgBrightness.show();
-    imgBrightness.updateAndDraw();
+  // Track the balls in a stream of frames and report the sustained frame
+  // rate. The source is either a directory of numbered 8-bit frames or a raw
+  // file of concatenated width x height Bayer frames, which is memory mapped.
+  // Frames are de-Bayered by the BallTracker, mostly only around the balls;
+  // full-frame searches are split into bands on the de-Bayer threads.
+  public void track(FrameSource source) throws Exception {
+    final BallTracker ballTracker = new BallTracker(new BallDetector(source.getWidth(), source.getHeight()));
+    if (threads > 1)
+      ballTracker.setExecutor(getExecutor(), threads);
+
+    FramePipeline pipeline = new FramePipeline(source, 4);
+    pipeline.setIntegerHsb(true);
+    pipeline.setPattern(pattern);
+    pipeline.setDebayer(false);
+    pipeline.run(new FramePipeline.FrameListener() {
+      @Override
+      public void frameReady(Frame frame) {
+        List<BallTracker.Track> tracks = ballTracker.update(frame.getBayerProcessor(), frame.getHue(), frame.getBrightness());
+        if (frame.getNumber() % 100 == 0)
+          System.out.println("Frame " + frame.getNumber() + ": " + tracks);
+      }
+    });
+    System.out.println("Full-frame searches: " + ballTracker.getFullSearches() + " of " + pipeline.getFrameCount() + " frames");
   }
 
-  public static void main(String[] args) {
+  public static void main(String[] args) throws Exception {
     BillardTracker plugin = new BillardTracker();
 
+    if (args.length > 0) {
+      FrameSource source;
+      if (new File(args[0]).isDirectory()) {
+        source = new DirectoryFrameSource(args[0]);
+      } else {
+        source = new MappedFrameSource(args[0], Integer.parseInt(args[1]), Integer.parseInt(args[2]));
+      }
+      try {
+        plugin.track(source);
+      } finally {
+        source.close();
+      }
+      Metrics.dump(System.out);
+      return;
+    }
+
     ImagePlus im = new ImagePlus("img/Billard2048x1088x1.png");
     im.show();
+    plugin.setBinned(true);
+    plugin.setDetect(true);
     plugin.setup("", im);
     plugin.run(im.getProcessor());
+    AsyncImageWriter.getShared().flush();
+    Metrics.dump(System.out);
   }
 }
@@ -0,0 +1,14 @@
+package imagej_billard;
+
+// Colour filter array layouts, named after the top-left 2x2 block of the
+// sensor read row by row (GBRG = green, blue in the first row and red, green
+// in the second one)
+public enum CfaPattern {
+  GBRG, GRBG, RGGB, BGGR;
+
+  // colour ('R', 'G' or 'B') of the filter at (x, y)
+  public char colorAt(int x, int y) {
+    return name().charAt(((y & 1) << 1) | (x & 1));
+  }
+
+}
@@ -0,0 +1,256 @@
+package imagej_billard;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+// Circle Hough transform on an 8-bit plane (e.g. the gray or hue plane of a
+// de-Bayered frame). Edge pixels are found with a Sobel operator and vote only
+// along their gradient direction, at distance r for every radius r of a radius
+// band, instead of for full circles. Each band has a 2D accumulator of circle
+// centres, so no 3D (x, y, r) accumulator is needed; one array is reused for
+// all bands. The radius of a found centre is then estimated from the
+// distances of the edge pixels around it.
+public class CircleHough {
+
+  private static final int SHIFT = 10; // fixed point bits of the gradient direction
+  private static final int ONE = 1 << SHIFT;
+
+  private int width;
+  private int height;
+  private int minRadius = 16;
+  private int maxRadius = 28;
+  private int bandWidth = 4; // radii per accumulator
+  private int edgeThreshold = 96; // min. |gx| + |gy| of an edge pixel
+  private double minVotes = 0.5; // min. votes as a fraction of the circumference
+  private int polarity = 0; // 1: bright circles, -1: dark circles, 0: both
+
+  private int[] accum; // centre votes of the current band
+  private int[] score; // 3x3 sums of accum
+  private int nrEdges;
+  private int[] edgeX = new int[4096];
+  private int[] edgeY = new int[4096];
+  private int[] dirX = new int[4096]; // unit gradient in fixed point
+  private int[] dirY = new int[4096];
+
+  private static class Circle {
+    double x, y;
+    int radius;
+    int votes;
+  }
+
+  public CircleHough(int width, int height) {
+    this.width = width;
+    this.height = height;
+    this.accum = new int[width * height];
+    this.score = new int[width * height];
+  }
+
+  // radii of the circles to find, in pixels (inclusive)
+  public void setRadiusRange(int minRadius, int maxRadius) {
+    this.minRadius = minRadius;
+    this.maxRadius = maxRadius;
+  }
+
+  // number of radii that share a centre accumulator
+  public void setBandWidth(int bandWidth) {
+    this.bandWidth = bandWidth;
+  }
+
+  public void setEdgeThreshold(int edgeThreshold) {
+    this.edgeThreshold = edgeThreshold;
+  }
+
+  // votes a centre needs, as a fraction of the circumference 2 * pi * r
+  public void setMinVotes(double minVotes) {
+    this.minVotes = minVotes;
+  }
+
+  // 1: circles brighter than the background, -1: darker, 0: both
+  public void setPolarity(int polarity) {
+    this.polarity = polarity;
+  }
+
+  public List<Ball> detect(byte[] plane) {
+    return detect(plane, 0, 0, width, height);
+  }
+
+  // Only edge pixels inside the given rectangle vote; centres may lie up to
+  // maxRadius outside of it
+  public List<Ball> detect(byte[] plane, int x, int y, int regionWidth, int regionHeight) {
+    int fromX = Math.max(x, 1), toX = Math.min(x + regionWidth, width - 1);
+    int fromY = Math.max(y, 1), toY = Math.min(y + regionHeight, height - 1);
+    findEdges(plane, fromX, fromY, toX, toY);
+
+    // area that can receive votes
+    int cFromX = Math.max(fromX - maxRadius, 0), cToX = Math.min(toX + maxRadius, width);
+    int cFromY = Math.max(fromY - maxRadius, 0), cToY = Math.min(toY + maxRadius, height);
+
+    List<Circle> circles = new ArrayList<Circle>();
+    for (int band = minRadius; band <= maxRadius; band += bandWidth) {
+      int bandTo = Math.min(band + bandWidth - 1, maxRadius);
+      for (int cy = cFromY; cy < cToY; cy++) {
+        Arrays.fill(accum, cy * width + cFromX, cy * width + cToX, 0);
+      }
+      vote(band, bandTo);
+      int threshold = (int) (minVotes * Math.PI * (band + bandTo));
+      findCentres(cFromX, cFromY, cToX, cToY, threshold, circles);
+    }
+
+    // strongest first; balls do not overlap, so a centre closer to a stronger
+    // circle than the sum of their radii is the same ball (found again in a
+    // neighbouring band or off-centre) and is dropped
+    Collections.sort(circles, new Comparator<Circle>() {
+      @Override
+      public int compare(Circle a, Circle b) {
+        return b.votes - a.votes;
+      }
+    });
+    List<Ball> balls = new ArrayList<Ball>();
+    List<Circle> accepted = new ArrayList<Circle>();
+    for (Circle circle : circles) {
+      boolean overlaps = false;
+      for (Circle other : accepted) {
+        double dx = circle.x - other.x, dy = circle.y - other.y;
+        double r = circle.radius + other.radius;
+        if (dx * dx + dy * dy < r * r) {
+          overlaps = true;
+          break;
+        }
+      }
+      if (overlaps)
+        continue;
+      accepted.add(circle);
+      balls.add(new Ball(circle.x, circle.y, (int) Math.round(Math.PI * circle.radius * circle.radius)));
+    }
+    return balls;
+  }
+
+  // edge pixels of the last detect()
+  public int getEdges() {
+    return nrEdges;
+  }
+
+  // Sobel gradients; pixels with |gx| + |gy| >= edgeThreshold are stored with
+  // their unit gradient direction
+  private void findEdges(byte[] plane, int fromX, int fromY, int toX, int toY) {
+    nrEdges = 0;
+    for (int y = fromY; y < toY; y++) {
+      int i = y * width + fromX;
+      for (int x = fromX; x < toX; x++, i++) {
+        int nw = plane[i - width - 1] & 0xff, n = plane[i - width] & 0xff, ne = plane[i - width + 1] & 0xff;
+        int w = plane[i - 1] & 0xff, e = plane[i + 1] & 0xff;
+        int sw = plane[i + width - 1] & 0xff, s = plane[i + width] & 0xff, se = plane[i + width + 1] & 0xff;
+        int gx = (ne + 2 * e + se) - (nw + 2 * w + sw);
+        int gy = (sw + 2 * s + se) - (nw + 2 * n + ne);
+        if (Math.abs(gx) + Math.abs(gy) < edgeThreshold)
+          continue;
+
+        if (nrEdges == edgeX.length) {
+          int size = 2 * nrEdges;
+          edgeX = Arrays.copyOf(edgeX, size);
+          edgeY = Arrays.copyOf(edgeY, size);
+          dirX = Arrays.copyOf(dirX, size);
+          dirY = Arrays.copyOf(dirY, size);
+        }
+        double length = Math.sqrt(gx * gx + gy * gy);
+        edgeX[nrEdges] = x;
+        edgeY[nrEdges] = y;
+        dirX[nrEdges] = (int) Math.round(gx * ONE / length);
+        dirY[nrEdges] = (int) Math.round(gy * ONE / length);
+        nrEdges++;
+      }
+    }
+  }
+
+  // The gradient points to the brighter side, i.e. towards the centre of a
+  // bright circle and away from the centre of a dark one
+  private void vote(int radiusFrom, int radiusTo) {
+    int half = ONE / 2;
+    for (int e = 0; e < nrEdges; e++) {
+      int x = edgeX[e], y = edgeY[e], ux = dirX[e], uy = dirY[e];
+      for (int r = radiusFrom; r <= radiusTo; r++) {
+        int dx = (r * ux + half) >> SHIFT;
+        int dy = (r * uy + half) >> SHIFT;
+        if (polarity >= 0)
+          addVote(x + dx, y + dy);
+        if (polarity <= 0)
+          addVote(x - dx, y - dy);
+      }
+    }
+  }
+
+  private void addVote(int x, int y) {
+    if (x >= 0 && x < width && y >= 0 && y < height)
+      accum[y * width + x]++;
+  }
+
+  // Local maxima of the 3x3 vote sums within a window of minRadius; the
+  // centre is the vote-weighted mean of the 3x3 cells
+  private void findCentres(int fromX, int fromY, int toX, int toY, int threshold, List<Circle> circles) {
+    for (int y = fromY + 1; y < toY - 1; y++) {
+      for (int x = fromX + 1, i = y * width + x; x < toX - 1; x++, i++) {
+        score[i] = accum[i - width - 1] + accum[i - width] + accum[i - width + 1] + accum[i - 1] + accum[i] + accum[i + 1] + accum[i + width - 1]
+            + accum[i + width] + accum[i + width + 1];
+      }
+    }
+
+    int nms = minRadius;
+    for (int y = fromY + 1; y < toY - 1; y++) {
+      for (int x = fromX + 1, i = y * width + x; x < toX - 1; x++, i++) {
+        int value = score[i];
+        if (value < threshold || !isMaximum(i, x, y, value, fromX + 1, fromY + 1, toX - 1, toY - 1, nms))
+          continue;
+
+        double sumX = 0, sumY = 0;
+        for (int dy = -1; dy <= 1; dy++) {
+          for (int dx = -1; dx <= 1; dx++) {
+            int votes = accum[i + dy * width + dx];
+            sumX += votes * (x + dx);
+            sumY += votes * (y + dy);
+          }
+        }
+        Circle circle = new Circle();
+        circle.x = sumX / value;
+        circle.y = sumY / value;
+        circle.votes = value;
+        circle.radius = estimateRadius(circle.x, circle.y);
+        circles.add(circle);
+      }
+    }
+  }
+
+  // strict maximum, ties go to the cell with the lower index
+  private boolean isMaximum(int i, int x, int y, int value, int fromX, int fromY, int toX, int toY, int radius) {
+    for (int ny = Math.max(y - radius, fromY); ny <= Math.min(y + radius, toY - 1); ny++) {
+      for (int nx = Math.max(x - radius, fromX); nx <= Math.min(x + radius, toX - 1); nx++) {
+        int n = ny * width + nx;
+        int other = score[n];
+        if (other > value || (other == value && n < i))
+          return false;
+      }
+    }
+    return true;
+  }
+
+  // most frequent distance of the edge pixels from the centre
+  private int estimateRadius(double cx, double cy) {
+    int[] histogram = new int[maxRadius + 2];
+    double limit = (maxRadius + 1) * (maxRadius + 1);
+    for (int e = 0; e < nrEdges; e++) {
+      double dx = edgeX[e] - cx, dy = edgeY[e] - cy;
+      double d2 = dx * dx + dy * dy;
+      if (d2 < limit)
+        histogram[(int) Math.round(Math.sqrt(d2))]++;
+    }
+    int best = minRadius;
+    for (int r = minRadius; r <= maxRadius; r++) {
+      if (histogram[r] > histogram[best])
+        best = r;
+    }
+    return best;
+  }
+
+}
@@ -0,0 +1,89 @@
+package imagej_billard;
+
+import java.io.File;
+import java.io.FileFilter;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Comparator;
+
+import ij.ImagePlus;
+import ij.process.ImageProcessor;
+
+// Reads numbered 8-bit frame images (e.g. frame0001.png, frame0002.png, ..)
+// from a directory in numeric order
+public class DirectoryFrameSource implements FrameSource {
+
+  private File[] files;
+  private int next;
+  private int width;
+  private int height;
+
+  public DirectoryFrameSource(String directory) throws IOException {
+    files = new File(directory).listFiles(new FileFilter() {
+      @Override
+      public boolean accept(File file) {
+        return file.isFile() && isImage(file.getName());
+      }
+    });
+    if (files == null)
+      throw new FileNotFoundException(directory);
+    if (files.length == 0)
+      throw new FileNotFoundException("no frames in " + directory);
+
+    // shorter names first so that frame9 comes before frame10
+    Arrays.sort(files, new Comparator<File>() {
+      @Override
+      public int compare(File a, File b) {
+        int cmp = Integer.compare(a.getName().length(), b.getName().length());
+        return (cmp != 0) ? cmp : a.getName().compareTo(b.getName());
+      }
+    });
+
+    ImagePlus first = open(files[0]);
+    width = first.getWidth();
+    height = first.getHeight();
+  }
+
+  @Override
+  public int getWidth() {
+    return width;
+  }
+
+  @Override
+  public int getHeight() {
+    return height;
+  }
+
+  @Override
+  public boolean read(Frame frame) throws IOException {
+    if (next >= files.length)
+      return false;
+
+    File file = files[next++];
+    ImageProcessor ip = open(file).getProcessor();
+    if (ip.getWidth() != width || ip.getHeight() != height || !(ip.getPixels() instanceof byte[]))
+      throw new IOException("frame " + file + " is not a " + width + "x" + height + " 8-bit image");
+
+    System.arraycopy((byte[]) ip.getPixels(), 0, frame.rawForWriting(), 0, width * height);
+    return true;
+  }
+
+  @Override
+  public void close() {
+    next = files.length;
+  }
+
+  private static ImagePlus open(File file) throws IOException {
+    ImagePlus image = new ImagePlus(file.getPath());
+    if (image.getProcessor() == null)
+      throw new IOException("cannot open frame " + file);
+    return image;
+  }
+
+  private static boolean isImage(String name) {
+    String lower = name.toLowerCase();
+    return lower.endsWith(".png") || lower.endsWith(".tif") || lower.endsWith(".tiff") || lower.endsWith(".bmp") || lower.endsWith(".pgm");
+  }
+
+}
@@ -0,0 +1,109 @@
+package imagej_billard;
+
+import java.nio.ByteBuffer;
+
+// Reusable frame buffer: raw Bayer pixels plus the de-Bayered output planes
+public class Frame {
+
+  private int number;
+  private int width;
+  private int height;
+  private int outputWidth;
+  private int outputHeight;
+  private byte[] raw;
+  private ByteBuffer heapPixels; // raw as a buffer
+  private ByteBuffer pixels; // buffer the processor reads: heapPixels or external
+  private byte[] gray;
+  private int[] rgb;
+  private byte[] hue;
+  private byte[] brightness;
+  private BayerProcessor bayerProcessor;
+
+  // Binned frames have output planes of half the raw width and height
+  public Frame(int width, int height, boolean binned) {
+    int size = width * height;
+    this.width = width;
+    this.height = height;
+    this.outputWidth = binned ? width / 2 : width;
+    this.outputHeight = binned ? height / 2 : height;
+    this.raw = new byte[size];
+    this.heapPixels = ByteBuffer.wrap(raw);
+    this.pixels = heapPixels;
+
+    size = outputWidth * outputHeight;
+    this.gray = new byte[size];
+    this.rgb = new int[size];
+    this.hue = new byte[size];
+    this.brightness = new byte[size];
+    this.bayerProcessor = new BayerProcessor(raw, width, height);
+  }
+
+  public int getNumber() {
+    return number;
+  }
+
+  void setNumber(int number) {
+    this.number = number;
+  }
+
+  public int getWidth() {
+    return width;
+  }
+
+  public int getHeight() {
+    return height;
+  }
+
+  // size of the output planes
+  public int getOutputWidth() {
+    return outputWidth;
+  }
+
+  public int getOutputHeight() {
+    return outputHeight;
+  }
+
+  // Raw pixels of the current frame as a read-only view starting at the
+  // first pixel: the heap buffer or the external buffer set by setPixels()
+  public ByteBuffer getRaw() {
+    return pixels.asReadOnlyBuffer();
+  }
+
+  // Heap buffer for the raw pixels, for sources that copy frames into it;
+  // the frame reads from it again instead of an external buffer
+  public byte[] rawForWriting() {
+    if (pixels != heapPixels) {
+      bayerProcessor.setPixels(heapPixels);
+      pixels = heapPixels;
+    }
+    return raw;
+  }
+
+  // Let the frame use an external buffer (e.g. a memory-mapped file region)
+  // for its raw pixels instead of copying them
+  public void setPixels(ByteBuffer pixels) {
+    bayerProcessor.setPixels(pixels);
+    this.pixels = pixels.slice();
+  }
+
+  public byte[] getGray() {
+    return gray;
+  }
+
+  public int[] getRGB() {
+    return rgb;
+  }
+
+  public byte[] getHue() {
+    return hue;
+  }
+
+  public byte[] getBrightness() {
+    return brightness;
+  }
+
+  public BayerProcessor getBayerProcessor() {
+    return bayerProcessor;
+  }
+
+}
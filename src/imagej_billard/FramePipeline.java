@@ -0,0 +1,175 @@
+package imagej_billard;
+
+import java.io.IOException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+// Streams frames from a FrameSource through three overlapping stages:
+// reading/decoding, de-Bayering and analysis (on the calling thread). A fixed
+// set of Frame buffers circulates between the stages, so a full queue blocks
+// the stage in front of it and no buffers are allocated per frame.
+public class FramePipeline {
+
+  public interface FrameListener {
+    void frameReady(Frame frame);
+  }
+
+  private static final Frame END = new Frame(0, 0, false); // end of stream marker
+
+  private FrameSource source;
+  private int nrBuffers;
+  private int threads = 1;
+  private boolean integerHsb;
+  private CfaPattern pattern = CfaPattern.GBRG;
+  private boolean binned;
+  private boolean debayer = true;
+  private int frameCount;
+  private long elapsedNanos;
+
+  public FramePipeline(FrameSource source, int nrBuffers) {
+    if (nrBuffers < 2)
+      throw new IllegalArgumentException("at least two frame buffers are needed");
+    this.source = source;
+    this.nrBuffers = nrBuffers;
+  }
+
+  // number of threads used to de-Bayer a single frame
+  public void setThreads(int threads) {
+    this.threads = threads;
+  }
+
+  // see BayerProcessor.setIntegerHsb()
+  public void setIntegerHsb(boolean integerHsb) {
+    this.integerHsb = integerHsb;
+  }
+
+  public void setPattern(CfaPattern pattern) {
+    this.pattern = pattern;
+  }
+
+  // see BayerProcessor.processBinned()
+  public void setBinned(boolean binned) {
+    this.binned = binned;
+  }
+
+  // With debayer off, frames reach the listener with only the raw pixels set
+  // and the listener de-Bayers what it needs (e.g. regions of interest)
+  public void setDebayer(boolean debayer) {
+    this.debayer = debayer;
+  }
+
+  public int getFrameCount() {
+    return frameCount;
+  }
+
+  public double getFramesPerSecond() {
+    return (elapsedNanos > 0) ? frameCount * 1e9 / elapsedNanos : 0;
+  }
+
+  public void run(final FrameListener listener) throws IOException, InterruptedException {
+    final BlockingQueue<Frame> free = new ArrayBlockingQueue<Frame>(nrBuffers);
+    final BlockingQueue<Frame> decoded = new ArrayBlockingQueue<Frame>(nrBuffers + 1);
+    final BlockingQueue<Frame> processed = new ArrayBlockingQueue<Frame>(nrBuffers + 1);
+    final Throwable[] errors = new Throwable[2]; // of the reader and the processor
+    final ExecutorService executor = (threads > 1) ? Executors.newFixedThreadPool(threads) : null;
+
+    for (int i = 0; i < nrBuffers; i++) {
+      Frame frame = new Frame(source.getWidth(), source.getHeight(), binned);
+      frame.getBayerProcessor().setPattern(pattern);
+      frame.getBayerProcessor().setIntegerHsb(integerHsb);
+      free.add(frame);
+    }
+
+    Thread reader = new Thread(new Runnable() {
+      @Override
+      public void run() {
+        try {
+          int number = 0;
+          while (true) {
+            Frame frame = free.take();
+            if (!source.read(frame))
+              break;
+            frame.setNumber(number++);
+            decoded.put(frame);
+          }
+        } catch (InterruptedException e) {
+          // stopped by run()
+        } catch (Throwable e) {
+          errors[0] = e;
+        } finally {
+          decoded.add(END); // there is always room: all frames plus END fit
+        }
+      }
+    }, "frame-reader");
+
+    Thread processor = new Thread(new Runnable() {
+      @Override
+      public void run() {
+        try {
+          Frame frame;
+          while ((frame = decoded.take()) != END) {
+            if (!debayer) {
+              // left to the listener
+            } else if (binned) {
+              frame.getBayerProcessor().processBinned(frame.getGray(), frame.getRGB(), frame.getHue(), frame.getBrightness());
+            } else if (executor != null) {
+              frame.getBayerProcessor().process(frame.getGray(), frame.getRGB(), frame.getHue(), frame.getBrightness(), executor, threads);
+            } else {
+              frame.getBayerProcessor().process(frame.getGray(), frame.getRGB(), frame.getHue(), frame.getBrightness());
+            }
+            processed.put(frame);
+          }
+        } catch (InterruptedException e) {
+          // stopped by run()
+        } catch (Throwable e) {
+          errors[1] = e;
+        } finally {
+          processed.add(END);
+        }
+      }
+    }, "frame-debayer");
+
+    reader.setDaemon(true);
+    processor.setDaemon(true);
+
+    frameCount = 0;
+    long start = System.nanoTime();
+    reader.start();
+    processor.start();
+    try {
+      Frame frame;
+      while ((frame = processed.take()) != END) {
+        listener.frameReady(frame);
+        frameCount++;
+        free.put(frame);
+      }
+    } finally {
+      elapsedNanos = System.nanoTime() - start;
+      reader.interrupt();
+      processor.interrupt();
+      if (executor != null)
+        executor.shutdown();
+    }
+
+    // the END markers order the errors before this point
+    for (Throwable error : errors) {
+      if (error != null)
+        rethrow(error);
+    }
+
+    System.out.println(String.format("[pipeline] %d frames in %d ms: %.1f fps", frameCount, elapsedNanos / 1000000, getFramesPerSecond()));
+  }
+
+  private static void rethrow(Throwable error) throws IOException {
+    if (error instanceof IOException)
+      throw (IOException) error;
+    if (error instanceof RuntimeException)
+      throw (RuntimeException) error;
+    if (error instanceof Error)
+      throw (Error) error;
+    throw new IllegalStateException(error);
+  }
+
+}
@@ -0,0 +1,17 @@
+package imagej_billard;
+
+import java.io.Closeable;
+import java.io.IOException;
+
+// Sequence of raw 8-bit Bayer frames of fixed size
+public interface FrameSource extends Closeable {
+
+  int getWidth();
+
+  int getHeight();
+
+  // Load the next frame into the given frame buffer; returns false at the end
+  // of the sequence
+  boolean read(Frame frame) throws IOException;
+
+}
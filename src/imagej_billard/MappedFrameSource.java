@@ -0,0 +1,103 @@
+package imagej_billard;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+// Memory-maps a file of concatenated raw Bayer frames (width x height bytes
+// each). Frames are handed out as views into the mapping, so recordings of
+// any size can be streamed or accessed at random without copying them to
+// the heap. The file is mapped on demand in chunks of whole frames because a
+// single mapping is limited to 2 GB. Only the chunk of the last frame is kept,
+// older chunks are unmapped by the GC once no frame view refers to them.
+public class MappedFrameSource implements FrameSource {
+
+  private static final long CHUNK_SIZE = 1L << 30; // max. bytes per mapping
+
+  private FileChannel channel;
+  private int width;
+  private int height;
+  private int frameSize;
+  private int frameCount;
+  private int framesPerChunk;
+  private MappedByteBuffer chunk; // mapping of the last frame
+  private int chunkIndex = -1;
+  private boolean closed;
+  private int next;
+
+  public MappedFrameSource(String fileName, int width, int height) throws IOException {
+    RandomAccessFile file = new RandomAccessFile(fileName, "r");
+    this.channel = file.getChannel();
+    this.width = width;
+    this.height = height;
+    this.frameSize = width * height;
+
+    long frames = channel.size() / frameSize; // incomplete trailing frames are dropped
+    if (frames > Integer.MAX_VALUE) {
+      file.close();
+      throw new IOException("too many frames in " + fileName);
+    }
+    this.frameCount = (int) frames;
+    this.framesPerChunk = (int) Math.max(1, CHUNK_SIZE / frameSize);
+  }
+
+  @Override
+  public int getWidth() {
+    return width;
+  }
+
+  @Override
+  public int getHeight() {
+    return height;
+  }
+
+  public int getFrameCount() {
+    return frameCount;
+  }
+
+  // Read-only view of frame n, positioned at its first pixel
+  public ByteBuffer getFrame(int n) throws IOException {
+    if (closed)
+      throw new IllegalStateException("frame source is closed");
+    if (n < 0 || n >= frameCount)
+      throw new IndexOutOfBoundsException("frame " + n + " of " + frameCount);
+
+    int index = n / framesPerChunk;
+    if (index != chunkIndex) {
+      long start = (long) index * framesPerChunk * frameSize;
+      long size = Math.min((long) framesPerChunk * frameSize, (long) frameCount * frameSize - start);
+      chunk = channel.map(FileChannel.MapMode.READ_ONLY, start, size);
+      chunkIndex = index;
+    }
+
+    ByteBuffer frame = chunk.duplicate();
+    int offset = (n % framesPerChunk) * frameSize;
+    frame.position(offset);
+    frame.limit(offset + frameSize);
+    return frame;
+  }
+
+  // Continue sequential reading at frame n
+  public void seek(int n) {
+    next = n;
+  }
+
+  @Override
+  public boolean read(Frame frame) throws IOException {
+    if (next >= frameCount)
+      return false;
+    frame.setPixels(getFrame(next++));
+    return true;
+  }
+
+  @Override
+  public void close() throws IOException {
+    closed = true;
+    chunk = null;
+    chunkIndex = -1;
+    channel.close();
+  }
+
+}
@@ -0,0 +1,47 @@
+package imagej_billard;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.FileInputStream;
+import java.io.IOException;
+
+// Reads frames from a file of concatenated raw Bayer frames (1 byte per pixel)
+public class RawFrameSource implements FrameSource {
+
+  private DataInputStream input;
+  private int width;
+  private int height;
+
+  public RawFrameSource(String fileName, int width, int height) throws IOException {
+    this.input = new DataInputStream(new BufferedInputStream(new FileInputStream(fileName), 1 << 20));
+    this.width = width;
+    this.height = height;
+  }
+
+  @Override
+  public int getWidth() {
+    return width;
+  }
+
+  @Override
+  public int getHeight() {
+    return height;
+  }
+
+  @Override
+  public boolean read(Frame frame) throws IOException {
+    try {
+      input.readFully(frame.rawForWriting(), 0, width * height);
+      return true;
+    } catch (EOFException e) {
+      return false; // incomplete trailing frames are dropped
+    }
+  }
+
+  @Override
+  public void close() throws IOException {
+    input.close();
+  }
+
+}
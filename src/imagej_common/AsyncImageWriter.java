@@ -0,0 +1,203 @@
+package imagej_common;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+import javax.imageio.IIOImage;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageWriteParam;
+import javax.imageio.ImageWriter;
+import javax.imageio.stream.ImageOutputStream;
+
+import ij.ImagePlus;
+
+// Writes PNG images on a background thread so that encoding does not block
+// image processing. write() takes a snapshot of the image and queues it; if
+// the queue is full, the caller waits until the writer catches up. With
+// setUniqueNames(true), a name that was already written by this writer gets
+// a numeric suffix instead of being overwritten.
+public class AsyncImageWriter {
+
+  public static final int DEFAULT_COMPRESSION = -1; // encoder default
+
+  private static AsyncImageWriter sharedWriter;
+
+  private static final class Job {
+    ImagePlus image;
+    String fileName;
+
+    Job(ImagePlus image, String fileName) {
+      this.image = image;
+      this.fileName = fileName;
+    }
+  }
+
+  private BlockingQueue<Job> queue;
+  private Set<String> fileNames = new HashSet<String>(); // with uniqueNames
+  private boolean uniqueNames;
+  private int compressionLevel;
+  private volatile boolean discard;
+  private int pending; // queued or being written
+  private Thread worker;
+
+  // capacity: max. number of queued images; compressionLevel: 0 (fastest) to
+  // 9 (smallest) or DEFAULT_COMPRESSION
+  public AsyncImageWriter(int capacity, int compressionLevel) {
+    this.queue = new ArrayBlockingQueue<Job>(capacity);
+    setCompressionLevel(compressionLevel);
+
+    worker = new Thread(new Runnable() {
+      @Override
+      public void run() {
+        try {
+          while (true) {
+            Job job = queue.take();
+            Metrics.Span span = Metrics.start("write");
+            try {
+              writePng(job.image, job.fileName);
+            } catch (Exception e) {
+              e.printStackTrace();
+            } finally {
+              span.end((long) job.image.getWidth() * job.image.getHeight());
+              done();
+            }
+          }
+        } catch (InterruptedException e) {
+          // closed
+        }
+      }
+    }, "image-writer");
+    worker.setDaemon(true);
+    worker.start();
+  }
+
+  // Writer shared by all processing stages; pending images are written
+  // before the JVM exits
+  public static synchronized AsyncImageWriter getShared() {
+    if (sharedWriter == null) {
+      sharedWriter = new AsyncImageWriter(8, DEFAULT_COMPRESSION);
+      Runtime.getRuntime().addShutdownHook(new Thread(new Runnable() {
+        @Override
+        public void run() {
+          sharedWriter.flush();
+        }
+      }));
+    }
+    return sharedWriter;
+  }
+
+  public void setCompressionLevel(int compressionLevel) {
+    if (compressionLevel != DEFAULT_COMPRESSION && (compressionLevel < 0 || compressionLevel > 9))
+      throw new IllegalArgumentException("compression level must be 0..9");
+    this.compressionLevel = compressionLevel;
+  }
+
+  // Drop all images instead of writing them, e.g. to benchmark the stages
+  // without PNG encoding
+  public void setDiscard(boolean discard) {
+    this.discard = discard;
+  }
+
+  // Give names that were already written a numeric suffix. Off by default:
+  // every name is remembered while this is on, so long runs that reuse their
+  // names should leave it off.
+  public synchronized void setUniqueNames(boolean uniqueNames) {
+    this.uniqueNames = uniqueNames;
+    if (!uniqueNames)
+      fileNames.clear();
+  }
+
+  // Queue the image for writing and return the file name actually used
+  public String write(ImagePlus image, String fileName) {
+    if (discard)
+      return fileName;
+    // time spent by the caller: snapshot, and waiting while the queue is full
+    Metrics.Span span = Metrics.start("write.queue");
+    try {
+      ImagePlus snapshot = new ImagePlus(image.getTitle(), image.getProcessor().duplicate());
+      String uniqueName = reserve(fileName);
+
+      synchronized (this) {
+        pending++;
+      }
+      try {
+        queue.put(new Job(snapshot, uniqueName));
+      } catch (InterruptedException e) {
+        done();
+        Thread.currentThread().interrupt();
+        throw new IllegalStateException("interrupted while queueing " + uniqueName, e);
+      }
+      return uniqueName;
+    } finally {
+      span.end((long) image.getWidth() * image.getHeight());
+    }
+  }
+
+  // Wait until all queued images are written
+  public synchronized void flush() {
+    boolean interrupted = false;
+    while (pending > 0) {
+      try {
+        wait();
+      } catch (InterruptedException e) {
+        interrupted = true;
+      }
+    }
+    if (interrupted)
+      Thread.currentThread().interrupt();
+  }
+
+  // Write the pending images and stop the writer thread
+  public void close() {
+    flush();
+    worker.interrupt();
+  }
+
+  private synchronized void done() {
+    pending--;
+    notifyAll();
+  }
+
+  private synchronized String reserve(String fileName) {
+    if (!uniqueNames)
+      return fileName;
+    String name = fileName;
+    int dot = fileName.lastIndexOf('.');
+    String base = (dot > 0) ? fileName.substring(0, dot) : fileName;
+    String extension = (dot > 0) ? fileName.substring(dot) : "";
+    for (int i = 1; !fileNames.add(name); i++) {
+      name = base + "_" + i + extension;
+    }
+    return name;
+  }
+
+  private void writePng(ImagePlus image, String fileName) throws IOException {
+    Iterator<ImageWriter> writers = ImageIO.getImageWritersByFormatName("png");
+    if (!writers.hasNext())
+      throw new IOException("no PNG encoder available");
+    ImageWriter writer = writers.next();
+
+    ImageWriteParam param = writer.getDefaultWriteParam();
+    if (compressionLevel != DEFAULT_COMPRESSION && param.canWriteCompressed()) {
+      param.setCompressionMode(ImageWriteParam.MODE_EXPLICIT);
+      param.setCompressionQuality(1.0f - compressionLevel / 9.0f); // quality 1 = level 0
+    }
+
+    File file = new File(fileName);
+    file.delete();
+    ImageOutputStream output = ImageIO.createImageOutputStream(file);
+    try {
+      writer.setOutput(output);
+      writer.write(null, new IIOImage(image.getBufferedImage(), null, null), param);
+    } finally {
+      writer.dispose();
+      output.close();
+    }
+  }
+
+}
@@ -0,0 +1,92 @@
+package imagej_common;
+
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.Map;
+
+// Pixel buffers for chained processing stages, pooled by size: a stage
+// borrows its output buffer instead of allocating a new array per image and
+// the consumer releases it when done, so a sequence of equally sized images
+// allocates only for the first one. Borrowed buffers keep the contents of
+// their previous use. Thread-safe.
+public class BufferPool {
+
+  private static final BufferPool shared = new BufferPool(8);
+
+  private final int maxPerSize; // free buffers kept per size and type
+  private final Map<Integer, ArrayDeque<byte[]>> freeBytes = new HashMap<Integer, ArrayDeque<byte[]>>();
+  private final Map<Integer, ArrayDeque<int[]>> freeInts = new HashMap<Integer, ArrayDeque<int[]>>();
+  private long allocatedBytes;
+  private long borrowed;
+  private long reused;
+
+  public BufferPool(int maxPerSize) {
+    this.maxPerSize = maxPerSize;
+  }
+
+  public static BufferPool getShared() {
+    return shared;
+  }
+
+  public synchronized byte[] borrowBytes(int size) {
+    borrowed++;
+    ArrayDeque<byte[]> free = freeBytes.get(size);
+    if (free != null && !free.isEmpty()) {
+      reused++;
+      return free.pop();
+    }
+    allocatedBytes += size;
+    return new byte[size];
+  }
+
+  public synchronized int[] borrowInts(int size) {
+    borrowed++;
+    ArrayDeque<int[]> free = freeInts.get(size);
+    if (free != null && !free.isEmpty()) {
+      reused++;
+      return free.pop();
+    }
+    allocatedBytes += 4L * size;
+    return new int[size];
+  }
+
+  public synchronized void release(byte[] buffer) {
+    ArrayDeque<byte[]> free = freeBytes.get(buffer.length);
+    if (free == null) {
+      free = new ArrayDeque<byte[]>();
+      freeBytes.put(buffer.length, free);
+    }
+    if (free.size() < maxPerSize)
+      free.push(buffer);
+  }
+
+  public synchronized void release(int[] buffer) {
+    ArrayDeque<int[]> free = freeInts.get(buffer.length);
+    if (free == null) {
+      free = new ArrayDeque<int[]>();
+      freeInts.put(buffer.length, free);
+    }
+    if (free.size() < maxPerSize)
+      free.push(buffer);
+  }
+
+  // bytes of all buffers the pool had to allocate
+  public synchronized long getAllocatedBytes() {
+    return allocatedBytes;
+  }
+
+  public synchronized long getBorrowed() {
+    return borrowed;
+  }
+
+  public synchronized long getReused() {
+    return reused;
+  }
+
+  // drop all free buffers
+  public synchronized void clear() {
+    freeBytes.clear();
+    freeInts.clear();
+  }
+
+}
@@ -0,0 +1,133 @@
+package imagej_common;
+
+import java.util.Arrays;
+
+// Integer convolution kernel for the KernelFilter, with odd width and
+// height. A kernel is either separable, i.e. the outer product of a column
+// and a row vector plus an optional extra weight on the center tap (the
+// Laplacian is a 3x3 box minus 9 times the center), or a general matrix.
+// Filter results are divided by the divisor and rounded. Sums are int, so
+// the absolute weights times 255 must fit into an int.
+public class Kernel {
+
+  // largest gaussian() radius whose sums fit into an int: the weights add
+  // up to 4^(2 * radius), times 255
+  public static final int MAX_GAUSSIAN_RADIUS = 5;
+
+  private int width;
+  private int height;
+  private int[] weights; // [y * width + x]
+  private int[] column; // separable factors, null for a general kernel
+  private int[] row;
+  private int center; // extra weight of the center tap of a separable kernel
+  private int divisor;
+
+  // general kernel
+  public Kernel(int width, int height, int[] weights, int divisor) {
+    if (width % 2 == 0 || height % 2 == 0 || weights.length != width * height)
+      throw new IllegalArgumentException("kernel must have odd size and width * height weights");
+    if (divisor == 0)
+      throw new IllegalArgumentException("divisor must not be 0");
+    long range = 0;
+    for (int weight : weights) {
+      range += Math.abs((long) weight);
+    }
+    if (range * 255 > Integer.MAX_VALUE)
+      throw new IllegalArgumentException("kernel weights too large, sums would overflow");
+    this.width = width;
+    this.height = height;
+    this.weights = weights.clone();
+    this.divisor = divisor;
+  }
+
+  // separable kernel column x row, plus center on the center tap
+  public Kernel(int[] column, int[] row, int center, int divisor) {
+    this(row.length, column.length, outer(column, row, center), divisor);
+    this.column = column.clone();
+    this.row = row.clone();
+    this.center = center;
+  }
+
+  private static int[] outer(int[] column, int[] row, int center) {
+    int[] weights = new int[column.length * row.length];
+    for (int y = 0; y < column.length; y++) {
+      for (int x = 0; x < row.length; x++) {
+        weights[y * row.length + x] = column[y] * row[x];
+      }
+    }
+    weights[weights.length / 2] += center;
+    return weights;
+  }
+
+  // 8-neighbour Laplacian: sum of the neighbours - 8 * center
+  public static Kernel laplacian() {
+    return new Kernel(new int[] { 1, 1, 1 }, new int[] { 1, 1, 1 }, -9, 1);
+  }
+
+  // horizontal gradient (right - left)
+  public static Kernel sobelX() {
+    return new Kernel(new int[] { 1, 2, 1 }, new int[] { -1, 0, 1 }, 0, 1);
+  }
+
+  // vertical gradient (bottom - top)
+  public static Kernel sobelY() {
+    return new Kernel(new int[] { -1, 0, 1 }, new int[] { 1, 2, 1 }, 0, 1);
+  }
+
+  // binomial approximation of a Gaussian with (2 * radius + 1) taps, radius
+  // 0..MAX_GAUSSIAN_RADIUS
+  public static Kernel gaussian(int radius) {
+    if (radius < 0 || radius > MAX_GAUSSIAN_RADIUS)
+      throw new IllegalArgumentException("gaussian radius must be 0.." + MAX_GAUSSIAN_RADIUS + ": " + radius);
+    int[] taps = new int[2 * radius + 1];
+    taps[0] = 1;
+    for (int n = 1; n < taps.length; n++) { // Pascal's triangle
+      for (int k = n; k > 0; k--) {
+        taps[k] += taps[k - 1];
+      }
+    }
+    int sum = 1 << (2 * radius);
+    return new Kernel(taps, taps, 0, sum * sum);
+  }
+
+  // mean of a size x size box (size odd)
+  public static Kernel box(int size) {
+    int[] taps = new int[size];
+    Arrays.fill(taps, 1);
+    return new Kernel(taps, taps, 0, size * size);
+  }
+
+  public int getWidth() {
+    return width;
+  }
+
+  public int getHeight() {
+    return height;
+  }
+
+  public int getWeight(int x, int y) {
+    return weights[y * width + x];
+  }
+
+  public boolean isSeparable() {
+    return row != null;
+  }
+
+  // separable factors
+  public int[] getColumn() {
+    return column;
+  }
+
+  public int[] getRow() {
+    return row;
+  }
+
+  public int getCenter() {
+    return center;
+  }
+
+  public int getDivisor() {
+    return divisor;
+  }
+
+}
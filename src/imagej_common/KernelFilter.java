@@ -0,0 +1,192 @@
+package imagej_common;
+
+// Convolution of an 8-bit image with a Kernel, directly on the pixel arrays.
+// The interior, where the kernel lies completely inside the image, is
+// processed in tiles of tileWidth x tileHeight pixels without any bounds
+// checks; separable kernels take two passes per tile (rows into a small
+// buffer, then columns) instead of width * height taps per pixel; both passes
+// run on the PixelKernels, i.e. with SIMD instructions if available. Pixels
+// closer to the border than the kernel radius are either left untouched or
+// computed separately with replicated edge pixels.
+//
+// Pixels closer to the border than margin are never written, e.g. to keep
+// the frame of pixelClip pixels that the Hough transforms ignore. A filter
+// keeps its tile buffers, so each thread needs its own instance.
+public class KernelFilter {
+
+  public enum Border {
+    NONE, // leave pixels whose neighbourhood leaves the image untouched
+    REPLICATE // continue the image with its edge pixels
+  }
+
+  private Kernel kernel;
+  private Border border = Border.NONE;
+  private int margin = 0;
+  private int tileWidth = 256;
+  private int tileHeight = 64;
+
+  private PixelKernels kernels = PixelKernels.get();
+  private int[] widened = new int[0]; // source row of a separable tile as ints
+  private int[] rowBuffer = new int[0]; // row pass of a separable tile
+  private int[] tileBuffer = new int[0]; // results of a tile
+
+  public KernelFilter(Kernel kernel) {
+    this.kernel = kernel;
+  }
+
+  public void setBorder(Border border) {
+    this.border = border;
+  }
+
+  public void setMargin(int margin) {
+    this.margin = margin;
+  }
+
+  public void setTileSize(int tileWidth, int tileHeight) {
+    this.tileWidth = tileWidth;
+    this.tileHeight = tileHeight;
+  }
+
+  // e.g. PixelKernels.scalar() to compare with the vector kernels
+  public void setKernels(PixelKernels kernels) {
+    this.kernels = kernels;
+  }
+
+  // Results rounded and clamped to 0..255
+  public void apply(byte[] src, int width, int height, byte[] dst) {
+    apply(src, width, height, dst, null);
+  }
+
+  // Results rounded, but not clamped (e.g. signed gradients)
+  public void apply(byte[] src, int width, int height, int[] dst) {
+    apply(src, width, height, null, dst);
+  }
+
+  private void apply(byte[] src, int width, int height, byte[] dstBytes, int[] dstInts) {
+    int rx = kernel.getWidth() / 2, ry = kernel.getHeight() / 2;
+
+    // output area, and the part of it that needs no border handling
+    int fromX = margin, toX = width - margin;
+    int fromY = margin, toY = height - margin;
+    int inFromX = Math.max(fromX, rx), inToX = Math.min(toX, width - rx);
+    int inFromY = Math.max(fromY, ry), inToY = Math.min(toY, height - ry);
+
+    for (int ty = inFromY; ty < inToY; ty += tileHeight) {
+      int tyEnd = Math.min(ty + tileHeight, inToY);
+      for (int tx = inFromX; tx < inToX; tx += tileWidth) {
+        int txEnd = Math.min(tx + tileWidth, inToX);
+        if (kernel.isSeparable())
+          separableTile(src, width, tx, ty, txEnd, tyEnd);
+        else
+          generalTile(src, width, tx, ty, txEnd, tyEnd);
+        storeTile(width, tx, ty, txEnd, tyEnd, dstBytes, dstInts);
+      }
+    }
+
+    if (border == Border.REPLICATE) {
+      for (int y = Math.max(fromY, 0); y < Math.min(toY, height); y++) {
+        boolean inside = y >= inFromY && y < inToY && inFromX < inToX;
+        for (int x = Math.max(fromX, 0); x < Math.min(toX, width); x++) {
+          if (inside && x == inFromX) {
+            x = inToX - 1; // skip the interior
+            continue;
+          }
+          store(y * width + x, divide(replicated(src, width, height, x, y)), dstBytes, dstInts);
+        }
+      }
+    }
+  }
+
+  private void separableTile(byte[] src, int width, int fromX, int fromY, int toX, int toY) {
+    int[] row = kernel.getRow(), column = kernel.getColumn();
+    int rx = row.length / 2, ry = column.length / 2;
+    int tw = toX - fromX, th = toY - fromY;
+    int rows = th + 2 * ry;
+    if (rowBuffer.length < rows * tw)
+      rowBuffer = new int[rows * tw];
+    if (tileBuffer.length < th * tw)
+      tileBuffer = new int[th * tw];
+
+    if (widened.length < tw + 2 * rx)
+      widened = new int[tw + 2 * rx];
+
+    // row pass for all source rows of the tile
+    for (int r = 0; r < rows; r++) {
+      PixelKernels.widen(src, (fromY - ry + r) * width + fromX - rx, tw + 2 * rx, widened, 0);
+      kernels.weightedSum(widened, 0, 1, row, rowBuffer, r * tw, tw, false);
+    }
+
+    // column pass and center weight
+    int[] center = { kernel.getCenter() };
+    for (int y = 0; y < th; y++) {
+      kernels.weightedSum(rowBuffer, y * tw, tw, column, tileBuffer, y * tw, tw, false);
+      if (center[0] != 0) {
+        PixelKernels.widen(src, (fromY + y) * width + fromX, tw, widened, 0);
+        kernels.weightedSum(widened, 0, 1, center, tileBuffer, y * tw, tw, true);
+      }
+    }
+  }
+
+  private void generalTile(byte[] src, int width, int fromX, int fromY, int toX, int toY) {
+    int kw = kernel.getWidth(), kh = kernel.getHeight();
+    int rx = kw / 2, ry = kh / 2;
+    int tw = toX - fromX, th = toY - fromY;
+    if (tileBuffer.length < th * tw)
+      tileBuffer = new int[th * tw];
+
+    for (int y = 0; y < th; y++) {
+      for (int x = 0, t = y * tw; x < tw; x++, t++) {
+        int sum = 0;
+        for (int ky = 0; ky < kh; ky++) {
+          int offset = (fromY + y - ry + ky) * width + fromX + x - rx;
+          for (int kx = 0; kx < kw; kx++) {
+            sum += kernel.getWeight(kx, ky) * (src[offset + kx] & 0xff);
+          }
+        }
+        tileBuffer[t] = sum;
+      }
+    }
+  }
+
+  private void storeTile(int width, int fromX, int fromY, int toX, int toY, byte[] dstBytes, int[] dstInts) {
+    int tw = toX - fromX;
+    for (int y = fromY, t = 0; y < toY; y++) {
+      for (int x = fromX, i = y * width + fromX; x < toX; x++, i++, t++) {
+        store(i, divide(tileBuffer[t]), dstBytes, dstInts);
+      }
+    }
+  }
+
+  private static void store(int index, int value, byte[] dstBytes, int[] dstInts) {
+    if (dstInts != null)
+      dstInts[index] = value;
+    else
+      dstBytes[index] = (byte) Math.min(255, Math.max(0, value));
+  }
+
+  // sum / divisor, rounded half away from zero
+  private int divide(int sum) {
+    int divisor = kernel.getDivisor();
+    if (divisor == 1)
+      return sum;
+    int half = Math.abs(divisor) / 2;
+    int value = (sum >= 0) ? (sum + half) / Math.abs(divisor) : -((-sum + half) / Math.abs(divisor));
+    return (divisor > 0) ? value : -value;
+  }
+
+  // kernel sum at (x, y) with coordinates clamped to the image
+  private int replicated(byte[] src, int width, int height, int x, int y) {
+    int kw = kernel.getWidth(), kh = kernel.getHeight();
+    int rx = kw / 2, ry = kh / 2;
+    int sum = 0;
+    for (int ky = 0; ky < kh; ky++) {
+      int sy = Math.min(Math.max(y - ry + ky, 0), height - 1);
+      for (int kx = 0; kx < kw; kx++) {
+        int sx = Math.min(Math.max(x - rx + kx, 0), width - 1);
+        sum += kernel.getWeight(kx, ky) * (src[sy * width + sx] & 0xff);
+      }
+    }
+    return sum;
+  }
+
+}
@@ -0,0 +1,149 @@
+package imagej_common;
+
+import java.io.PrintStream;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+// Per-stage timing of the processing stages. A stage wraps its work in a
+// span, ended in a finally block so that failed calls are counted too:
+//
+//   Metrics.Span span = Metrics.start("laplace");
+//   try {
+//     ...
+//   } finally {
+//     span.end(pixels, edges);
+//   }
+//
+// which records the latency, the pixels and edge points and the bytes the
+// calling thread allocated into the StageStats of the stage, and commits a
+// JFR event (StageEvent) if a flight recording is running. The statistics
+// can be queried with stage() / getStages() or printed by dump(). Spans cost
+// two clock and allocation counter reads, -Dimagej.metrics=false or
+// setEnabled(false) turns them off.
+public final class Metrics {
+
+  private static final Map<String, StageStats> stages = new LinkedHashMap<String, StageStats>();
+  private static final ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+  private static final boolean allocationSupported = threads instanceof com.sun.management.ThreadMXBean
+      && ((com.sun.management.ThreadMXBean) threads).isThreadAllocatedMemorySupported();
+  private static volatile boolean enabled = !"false".equals(System.getProperty("imagej.metrics"));
+
+  private static final Span DISABLED = new Span(null);
+
+  public static final class Span {
+    private final StageStats stats;
+    private long startNanos;
+    private long startAllocated;
+    private StageEvent event;
+
+    private Span(StageStats stats) {
+      this.stats = stats;
+    }
+
+    public void end() {
+      end(0, -1);
+    }
+
+    public void end(long pixels) {
+      end(pixels, -1);
+    }
+
+    // edges: edge points found or processed by the stage, -1 if none
+    public void end(long pixels, long edges) {
+      if (stats == null)
+        return;
+      long nanos = System.nanoTime() - startNanos;
+      long allocated = (startAllocated >= 0) ? allocatedBytes() - startAllocated : -1;
+      stats.record(nanos, pixels, edges, allocated);
+
+      event.end();
+      if (event.shouldCommit()) {
+        event.stage = stats.getName();
+        event.pixels = pixels;
+        event.edges = edges;
+        event.allocated = allocated;
+        event.commit();
+      }
+    }
+  }
+
+  private Metrics() {
+  }
+
+  public static Span start(String stage) {
+    if (!enabled)
+      return DISABLED;
+    Span span = new Span(stage(stage));
+    span.event = new StageEvent();
+    span.event.begin();
+    span.startAllocated = allocatedBytes();
+    span.startNanos = System.nanoTime();
+    return span;
+  }
+
+  public static void setEnabled(boolean enabled) {
+    Metrics.enabled = enabled;
+  }
+
+  public static boolean isEnabled() {
+    return enabled;
+  }
+
+  // statistics of a stage, created on first use
+  public static StageStats stage(String name) {
+    synchronized (stages) {
+      StageStats stats = stages.get(name);
+      if (stats == null) {
+        stats = new StageStats(name);
+        stages.put(name, stats);
+      }
+      return stats;
+    }
+  }
+
+  // all stages in the order of their first use
+  public static List<StageStats> getStages() {
+    synchronized (stages) {
+      return new ArrayList<StageStats>(stages.values());
+    }
+  }
+
+  public static void reset() {
+    for (StageStats stats : getStages()) {
+      stats.reset();
+    }
+  }
+
+  // one line per stage: calls, mean / p50 / p99 / max latency, throughput,
+  // mean edge points and allocation per call
+  public static String summary() {
+    StringBuilder summary = new StringBuilder();
+    summary.append(String.format("%-18s %7s %9s %9s %9s %9s %10s %10s %10s%n", "stage", "calls", "mean ms", "p50 ms", "p99 ms", "max ms", "MPixel/s",
+        "edges", "KB/call"));
+    for (StageStats stats : getStages()) {
+      long count = stats.getCount();
+      if (count == 0)
+        continue;
+      String throughput = (stats.getPixels() > 0) ? String.format("%.1f", stats.getPixelsPerSecond() / 1e6) : "-";
+      String edges = stats.hasEdges() ? String.format("%.0f", stats.getMeanEdges()) : "-";
+      summary.append(String.format("%-18s %7d %9.3f %9.3f %9.3f %9.3f %10s %10s %10.1f%n", stats.getName(), count, stats.getMeanNanos() / 1e6,
+          stats.getPercentileNanos(0.5) / 1e6, stats.getPercentileNanos(0.99) / 1e6, stats.getMaxNanos() / 1e6, throughput, edges,
+          stats.getAllocatedBytes() / 1024.0 / count));
+    }
+    return summary.toString();
+  }
+
+  public static void dump(PrintStream out) {
+    out.print(summary());
+  }
+
+  // bytes allocated by the current thread so far, -1 if not supported
+  private static long allocatedBytes() {
+    return allocationSupported ? ((com.sun.management.ThreadMXBean) threads).getCurrentThreadAllocatedBytes() : -1;
+  }
+
+}
@@ -0,0 +1,65 @@
+package imagej_common;
+
+// Inner loops of the pixel filters, with a SIMD implementation based on the
+// Java Vector API (jdk.incubator.vector) and a plain scalar one. get()
+// returns the vector kernels if the module is available, i.e. the JVM was
+// started with --add-modules jdk.incubator.vector, and the scalar kernels
+// otherwise; -Dimagej.scalar=true forces the scalar ones. Both return
+// exactly the same results.
+public abstract class PixelKernels {
+
+  private static final String VECTOR_KERNELS = "imagej_common.VectorPixelKernels";
+
+  private static PixelKernels instance;
+
+  public static synchronized PixelKernels get() {
+    if (instance == null)
+      instance = load();
+    return instance;
+  }
+
+  public static PixelKernels scalar() {
+    return new ScalarPixelKernels();
+  }
+
+  // The vector kernels are only loaded by name, so the scalar path never
+  // links against the incubator module
+  private static PixelKernels load() {
+    if (!Boolean.getBoolean("imagej.scalar") && ModuleLayer.boot().findModule("jdk.incubator.vector").isPresent()) {
+      try {
+        return (PixelKernels) Class.forName(VECTOR_KERNELS).getDeclaredConstructor().newInstance();
+      } catch (ReflectiveOperationException | LinkageError e) {
+        System.out.println("[kernels] vector kernels not available: " + e);
+      }
+    }
+    return new ScalarPixelKernels();
+  }
+
+  public abstract boolean isVectorized();
+
+  // Binary threshold of src[offset, offset + length): dst gets 255 where the
+  // unsigned pixel is > threshold and 0 elsewhere (same indices as src). The
+  // positions (relative to offset) of the 255 pixels are stored in hits in
+  // ascending order; returns their number. dst may be src.
+  public abstract int threshold(byte[] src, int offset, int length, int threshold, byte[] dst, int[] hits);
+
+  // dst[dstOffset + x] (+)= sum over k of weights[k] * src[offset + x + k *
+  // stride] for x in [0, length): one pass of a separable convolution, along
+  // a row (stride 1) or a column (stride = row length)
+  public abstract void weightedSum(int[] src, int offset, int stride, int[] weights, int[] dst, int dstOffset, int length, boolean accumulate);
+
+  // Bilinear Bayer interpolation of the pixels [from, to) of a row, given
+  // the row and its upper and lower neighbour rows as ints (indices are
+  // x-coordinates; from - 1 and to must exist). The row alternates green and
+  // red (redRow) or green and blue pixels, starting with green at from if
+  // greenFirst. The channels of pixel x go to r[x], g[x] and b[x].
+  public abstract void bayerRow(int[] up, int[] row, int[] down, int from, int to, boolean greenFirst, boolean redRow, int[] r, int[] g, int[] b);
+
+  // unsigned widening of src[offset, offset + length) to dst[dstOffset..]
+  public static void widen(byte[] src, int offset, int length, int[] dst, int dstOffset) {
+    for (int i = 0; i < length; i++) {
+      dst[dstOffset + i] = src[offset + i] & 0xff;
+    }
+  }
+
+}
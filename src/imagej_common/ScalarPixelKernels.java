@@ -0,0 +1,55 @@
+package imagej_common;
+
+// Reference implementation of the PixelKernels
+class ScalarPixelKernels extends PixelKernels {
+
+  @Override
+  public boolean isVectorized() {
+    return false;
+  }
+
+  @Override
+  public int threshold(byte[] src, int offset, int length, int threshold, byte[] dst, int[] hits) {
+    int count = 0;
+    for (int i = 0; i < length; i++) {
+      if ((src[offset + i] & 0xff) > threshold) {
+        dst[offset + i] = (byte) 255;
+        hits[count++] = i;
+      } else {
+        dst[offset + i] = 0;
+      }
+    }
+    return count;
+  }
+
+  @Override
+  public void weightedSum(int[] src, int offset, int stride, int[] weights, int[] dst, int dstOffset, int length, boolean accumulate) {
+    for (int x = 0; x < length; x++) {
+      int sum = accumulate ? dst[dstOffset + x] : 0;
+      for (int k = 0, i = offset + x; k < weights.length; k++, i += stride) {
+        sum += weights[k] * src[i];
+      }
+      dst[dstOffset + x] = sum;
+    }
+  }
+
+  @Override
+  public void bayerRow(int[] up, int[] row, int[] down, int from, int to, boolean greenFirst, boolean redRow, int[] r, int[] g, int[] b) {
+    for (int x = from; x < to; x++) {
+      int c = row[x];
+      int h = (row[x - 1] + row[x + 1]) >> 1;
+      int v = (up[x] + down[x]) >> 1;
+      if (((x - from) & 1) == (greenFirst ? 0 : 1)) { // green
+        r[x] = redRow ? h : v;
+        g[x] = c;
+        b[x] = redRow ? v : h;
+      } else { // red or blue
+        int d = (up[x - 1] + up[x + 1] + down[x - 1] + down[x + 1]) >> 2;
+        r[x] = redRow ? c : d;
+        g[x] = (h + v) >> 1;
+        b[x] = redRow ? d : c;
+      }
+    }
+  }
+
+}
@@ -0,0 +1,33 @@
+package imagej_common;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+// JFR event of a Metrics span, recorded with e.g.
+// java -XX:StartFlightRecording:filename=stages.jfr ...
+// and listed by: jfr print --events imagej.Stage stages.jfr
+@Name("imagej.Stage")
+@Label("Processing Stage")
+@Category("ImageJ")
+@Description("One call of an image processing stage")
+class StageEvent extends Event {
+
+  @Label("Stage")
+  String stage;
+
+  @Label("Pixels")
+  long pixels;
+
+  @Label("Edge Points")
+  @Description("-1 if not reported")
+  long edges;
+
+  @Label("Allocated")
+  @DataAmount
+  long allocated;
+
+}
@@ -0,0 +1,139 @@
+package imagej_common;
+
+import java.util.Arrays;
+
+// Statistics of one processing stage, filled by Metrics spans: number of
+// calls, a latency histogram, and the pixels, edge points and bytes
+// allocated per call. The histogram has 8 linear buckets per power of two
+// (values below 16 ns exact), so percentiles are within 12.5%. Thread-safe.
+public class StageStats {
+
+  private static final int SUB_BITS = 3;
+  private static final int SUB_BUCKETS = 1 << SUB_BITS;
+  private static final int LINEAR = 2 * SUB_BUCKETS; // values below are exact
+  private static final int BUCKETS = LINEAR + (63 - SUB_BITS - 1) * SUB_BUCKETS;
+
+  private final String name;
+  private final long[] histogram = new long[BUCKETS];
+  private long count;
+  private long totalNanos;
+  private long minNanos = Long.MAX_VALUE;
+  private long maxNanos;
+  private long pixels;
+  private long edges;
+  private long edgeCalls; // calls that reported edge points
+  private long allocatedBytes;
+
+  StageStats(String name) {
+    this.name = name;
+  }
+
+  // edges < 0: not reported; allocatedBytes < 0: not measured
+  public synchronized void record(long nanos, long pixels, long edges, long allocatedBytes) {
+    nanos = Math.max(0, nanos);
+    histogram[bucket(nanos)]++;
+    count++;
+    totalNanos += nanos;
+    minNanos = Math.min(minNanos, nanos);
+    maxNanos = Math.max(maxNanos, nanos);
+    this.pixels += pixels;
+    if (edges >= 0) {
+      this.edges += edges;
+      edgeCalls++;
+    }
+    if (allocatedBytes > 0)
+      this.allocatedBytes += allocatedBytes;
+  }
+
+  public String getName() {
+    return name;
+  }
+
+  public synchronized long getCount() {
+    return count;
+  }
+
+  public synchronized long getTotalNanos() {
+    return totalNanos;
+  }
+
+  public synchronized long getMeanNanos() {
+    return (count > 0) ? totalNanos / count : 0;
+  }
+
+  public synchronized long getMinNanos() {
+    return (count > 0) ? minNanos : 0;
+  }
+
+  public synchronized long getMaxNanos() {
+    return maxNanos;
+  }
+
+  // latency below which the fraction p (0..1) of the calls lie, as the
+  // upper bound of its histogram bucket (at most the max. latency)
+  public synchronized long getPercentileNanos(double p) {
+    if (count == 0)
+      return 0;
+    long rank = Math.max(1, (long) Math.ceil(p * count));
+    long seen = 0;
+    for (int i = 0; i < BUCKETS; i++) {
+      seen += histogram[i];
+      if (seen >= rank)
+        return Math.min(maxNanos, upperBound(i));
+    }
+    return maxNanos;
+  }
+
+  public synchronized long getPixels() {
+    return pixels;
+  }
+
+  // pixels per second of stage time
+  public synchronized double getPixelsPerSecond() {
+    return (totalNanos > 0) ? pixels * 1e9 / totalNanos : 0;
+  }
+
+  public synchronized long getEdges() {
+    return edges;
+  }
+
+  // true if any call reported its edge points
+  public synchronized boolean hasEdges() {
+    return edgeCalls > 0;
+  }
+
+  // mean edge points of the calls that reported them
+  public synchronized double getMeanEdges() {
+    return (edgeCalls > 0) ? (double) edges / edgeCalls : 0;
+  }
+
+  // bytes allocated by the calling threads within the stage
+  public synchronized long getAllocatedBytes() {
+    return allocatedBytes;
+  }
+
+  public synchronized void reset() {
+    Arrays.fill(histogram, 0);
+    count = totalNanos = maxNanos = pixels = edges = edgeCalls = allocatedBytes = 0;
+    minNanos = Long.MAX_VALUE;
+  }
+
+  private static int bucket(long value) {
+    if (value < LINEAR)
+      return (int) value;
+    int exponent = 63 - Long.numberOfLeadingZeros(value); // >= SUB_BITS + 1
+    int sub = (int) (value >>> (exponent - SUB_BITS)) & (SUB_BUCKETS - 1);
+    return LINEAR + (exponent - SUB_BITS - 1) * SUB_BUCKETS + sub;
+  }
+
+  // largest value of a bucket
+  private static long upperBound(int bucket) {
+    if (bucket < LINEAR)
+      return bucket;
+    int exponent = (bucket - LINEAR) / SUB_BUCKETS + SUB_BITS + 1;
+    long sub = (bucket - LINEAR) % SUB_BUCKETS;
+    long lower = (1L << exponent) + (sub << (exponent - SUB_BITS));
+    return lower + (1L << (exponent - SUB_BITS)) - 1;
+  }
+
+}
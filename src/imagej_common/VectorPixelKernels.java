@@ -0,0 +1,115 @@
+package imagej_common;
+
+import jdk.incubator.vector.ByteVector;
+import jdk.incubator.vector.IntVector;
+import jdk.incubator.vector.VectorMask;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+// PixelKernels on the Java Vector API, with the preferred vector size of the
+// CPU. Only loaded by PixelKernels.get() if jdk.incubator.vector is present;
+// compiling it needs --add-modules jdk.incubator.vector. Loop tails use the
+// scalar kernels.
+class VectorPixelKernels extends PixelKernels {
+
+  private static final VectorSpecies<Byte> BYTES = ByteVector.SPECIES_PREFERRED;
+  private static final VectorSpecies<Integer> INTS = IntVector.SPECIES_PREFERRED;
+
+  private final ScalarPixelKernels scalar = new ScalarPixelKernels();
+  private final VectorMask<Integer> evenLanes; // lanes 0, 2, 4, ..
+  private final VectorMask<Integer> oddLanes;
+
+  VectorPixelKernels() {
+    boolean[] even = new boolean[INTS.length()];
+    for (int i = 0; i < even.length; i += 2) {
+      even[i] = true;
+    }
+    evenLanes = VectorMask.fromArray(INTS, even, 0);
+    oddLanes = evenLanes.not();
+  }
+
+  @Override
+  public boolean isVectorized() {
+    return true;
+  }
+
+  @Override
+  public int threshold(byte[] src, int offset, int length, int threshold, byte[] dst, int[] hits) {
+    if (threshold < 0 || threshold >= 255) // threshold must fit into an unsigned byte
+      return scalar.threshold(src, offset, length, threshold, dst, hits);
+
+    ByteVector zero = ByteVector.zero(BYTES);
+    byte limit = (byte) threshold;
+    int count = 0;
+    int i = 0;
+    for (int bound = BYTES.loopBound(length); i < bound; i += BYTES.length()) {
+      VectorMask<Byte> edges = ByteVector.fromArray(BYTES, src, offset + i).compare(VectorOperators.UNSIGNED_GT, limit);
+      zero.blend((byte) -1, edges).intoArray(dst, offset + i);
+      if (!edges.anyTrue()) // edge maps are mostly empty
+        continue;
+      // positions from the stored lanes: VectorMask.toLong() is not an
+      // intrinsic on JDK 17 and allocates for every call
+      for (int j = i, end = i + BYTES.length(); j < end; j++) {
+        if (dst[offset + j] != 0)
+          hits[count++] = j;
+      }
+    }
+
+    // tail
+    for (; i < length; i++) {
+      if ((src[offset + i] & 0xff) > threshold) {
+        dst[offset + i] = (byte) 255;
+        hits[count++] = i;
+      } else {
+        dst[offset + i] = 0;
+      }
+    }
+    return count;
+  }
+
+  @Override
+  public void weightedSum(int[] src, int offset, int stride, int[] weights, int[] dst, int dstOffset, int length, boolean accumulate) {
+    int x = 0;
+    for (int bound = INTS.loopBound(length); x < bound; x += INTS.length()) {
+      IntVector sum = accumulate ? IntVector.fromArray(INTS, dst, dstOffset + x) : IntVector.zero(INTS);
+      for (int k = 0, i = offset + x; k < weights.length; k++, i += stride) {
+        int weight = weights[k];
+        if (weight == 1)
+          sum = sum.add(IntVector.fromArray(INTS, src, i));
+        else if (weight != 0)
+          sum = sum.add(IntVector.fromArray(INTS, src, i).mul(weight));
+      }
+      sum.intoArray(dst, dstOffset + x);
+    }
+    if (x < length)
+      scalar.weightedSum(src, offset + x, stride, weights, dst, dstOffset + x, length - x, accumulate);
+  }
+
+  @Override
+  public void bayerRow(int[] up, int[] row, int[] down, int from, int to, boolean greenFirst, boolean redRow, int[] r, int[] g, int[] b) {
+    VectorMask<Integer> green = greenFirst ? evenLanes : oddLanes; // vector steps are even
+    int length = to - from;
+    int i = 0;
+    for (int bound = INTS.loopBound(length); i < bound; i += INTS.length()) {
+      int x = from + i;
+      IntVector c = IntVector.fromArray(INTS, row, x);
+      IntVector left = IntVector.fromArray(INTS, row, x - 1);
+      IntVector right = IntVector.fromArray(INTS, row, x + 1);
+      IntVector above = IntVector.fromArray(INTS, up, x);
+      IntVector below = IntVector.fromArray(INTS, down, x);
+      IntVector h = left.add(right).lanewise(VectorOperators.ASHR, 1);
+      IntVector v = above.add(below).lanewise(VectorOperators.ASHR, 1);
+      IntVector d = IntVector.fromArray(INTS, up, x - 1).add(IntVector.fromArray(INTS, up, x + 1)).add(IntVector.fromArray(INTS, down, x - 1))
+          .add(IntVector.fromArray(INTS, down, x + 1)).lanewise(VectorOperators.ASHR, 2);
+      IntVector cross = h.add(v).lanewise(VectorOperators.ASHR, 1);
+
+      // non-green lanes first, then the green lanes blended in
+      (redRow ? c : d).blend(redRow ? h : v, green).intoArray(r, x);
+      cross.blend(c, green).intoArray(g, x);
+      (redRow ? d : c).blend(redRow ? v : h, green).intoArray(b, x);
+    }
+    if (i < length) // the tail starts on a green pixel if the row did and i is even
+      scalar.bayerRow(up, row, down, from + i, to, greenFirst == ((i & 1) == 0), redRow, r, g, b);
+  }
+
+}
@@ -1,10 +1,14 @@
 package imagej_hough;
 
+import java.util.Arrays;
+
 import ij.ImagePlus;
 import ij.gui.NewImage;
-import ij.plugin.PNG_Writer;
 import ij.plugin.filter.PlugInFilter;
 import ij.process.*;
+import imagej_common.AsyncImageWriter;
+import imagej_common.Metrics;
+import imagej_common.PixelKernels;
 
 public class BinaryTransform implements PlugInFilter {
 
@@ -15,9 +19,10 @@ public class BinaryTransform implements PlugInFilter {
   private String mImageName;
   private int mThreshold;
   private boolean mShowResult;
+  private int[] mEdgePoints; // packed edge pixels, see EdgePoints
 
   public BinaryTransform(ImagePlus image, int threshold) {
-    mInputImage = image.duplicate();
+    mInputImage = image;
     mThreshold = threshold;
     mImageName = image.getShortTitle();
   }
@@ -26,10 +31,14 @@ public class BinaryTransform implements PlugInFilter {
     System.out.println("[binary] processing image " + mImageName);
     mShowResult = showResult;
 
-    // convert image to grayscale for hough analysis
-    ImageConverter ic = new ImageConverter(mInputImage);
-    ic.convertToGray8();
-    mInputImage.updateAndDraw();
+    // convert image to grayscale for hough analysis; gray images are only
+    // read and need no copy
+    if (mInputImage.getType() != ImagePlus.GRAY8) {
+      mInputImage = mInputImage.duplicate();
+      ImageConverter ic = new ImageConverter(mInputImage);
+      ic.convertToGray8();
+      mInputImage.updateAndDraw();
+    }
 
     setup("", mInputImage);
     run(mInputImage.getProcessor());
@@ -37,6 +46,12 @@ public class BinaryTransform implements PlugInFilter {
     return mTransformedImage;
   }
 
+  // Pixels above the threshold as a packed list of center-relative
+  // coordinates (see EdgePoints), collected by the last process()
+  public int[] getEdgePoints() {
+    return mEdgePoints;
+  }
+
   @Override
   public int setup(String arg, ImagePlus imp) {
     return DOES_8G;
@@ -48,30 +63,38 @@ public class BinaryTransform implements PlugInFilter {
     mTransformedImage = NewImage.createByteImage(mImageName + "_binary", ip.getWidth(), ip.getHeight(), 1, NewImage.FILL_BLACK);
     ImageProcessor ipTransformed = mTransformedImage.getProcessor();
 
-    // Perform binary transform and fill new image
-    int[] rgb = new int[3];
-    for (int y = (0 + pixelClip); y < (ip.getHeight() - pixelClip); y++) {
-      for (int x = (0 + pixelClip); x < (ip.getWidth() - pixelClip); x++) {
-        ip.getPixel(x, y, rgb);
-        int pixel = rgb[0];
-        int newVal = (pixel > mThreshold) ? 255 : 0;
-        rgb[0] = rgb[1] = rgb[2] = newVal;
-        ipTransformed.putPixel(x, y, rgb);
-      }
+    // Perform binary transform and fill new image; collect the edge pixels
+    // on the way
+    int width = ip.getWidth();
+    int count = 0;
+    Metrics.Span span = Metrics.start("binary");
+    try {
+      int xC = width / 2, yC = ip.getHeight() / 2;
+      byte[] pixels = (byte[]) ip.getPixels();
+      byte[] transformed = (byte[]) ipTransformed.getPixels();
+      int[] points = new int[1024];
+      PixelKernels kernels = PixelKernels.get();
+      int[] hits = new int[width];
+      for (int y = (0 + pixelClip); y < (ip.getHeight() - pixelClip); y++) {
+        int found = kernels.threshold(pixels, y * width + pixelClip, width - 2 * pixelClip, mThreshold, transformed, hits);
+        if (count + found > points.length)
+          points = Arrays.copyOf(points, Math.max(2 * points.length, count + found));
+        for (int i = 0; i < found; i++) {
+          points[count++] = EdgePoints.pack(pixelClip + hits[i] - xC, y - yC);
+        }
 
+      }
+      mEdgePoints = Arrays.copyOf(points, count);
+    } finally {
+      span.end((long) width * ip.getHeight(), count);
     }
     // Show and save binary transformed image
     mTransformedImage.updateAndDraw();
     if (mShowResult)
       mTransformedImage.show();
 
-    PNG_Writer png = new PNG_Writer();
-    try {
-      System.out.println("[binary] saving image " + mImageName + "_binary.png");
-      png.writeImage(mTransformedImage, "img/" + mImageName + "_binary.png", 0);
-    } catch (Exception e) {
-      e.printStackTrace();
-    }
+    System.out.println("[binary] saving image " + mImageName + "_binary.png");
+    AsyncImageWriter.getShared().write(mTransformedImage, "img/" + mImageName + "_binary.png");
 
   }
 
@@ -0,0 +1,43 @@
+package imagej_hough;
+
+import java.util.Arrays;
+
+// Edge pixels as a packed list: each point is a single int holding its
+// coordinates relative to the image center (width / 2, height / 2) as
+// (cx << 16) | (cy & 0xffff). Images may be up to 65535 pixels wide and high.
+public final class EdgePoints {
+
+  private EdgePoints() {
+  }
+
+  public static int pack(int cx, int cy) {
+    return (cx << 16) | (cy & 0xffff);
+  }
+
+  public static int x(int point) {
+    return point >> 16;
+  }
+
+  public static int y(int point) {
+    return (short) point;
+  }
+
+  // all pixels > 0 of an 8-bit image, ignoring a frame of clip pixels at the
+  // image border
+  public static int[] collect(byte[] pixels, int width, int height, int clip) {
+    int xC = width / 2, yC = height / 2;
+    int[] points = new int[1024];
+    int count = 0;
+    for (int y = clip; y < height - clip; y++) {
+      for (int x = clip, i = y * width + clip; x < width - clip; x++, i++) {
+        if (pixels[i] == 0)
+          continue;
+        if (count == points.length)
+          points = Arrays.copyOf(points, 2 * count);
+        points[count++] = pack(x - xC, y - yC);
+      }
+    }
+    return Arrays.copyOf(points, count);
+  }
+
+}
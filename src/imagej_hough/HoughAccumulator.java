@@ -0,0 +1,430 @@
+package imagej_hough;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+// Voting engine for the straight line Hough transform. Lines are described
+// in Hesse normal form relative to the image center: the angles
+// (angFrom + ang) * dAng cover [0, pi) in nAng steps, and radius = rad * dRad
+// - rMax with rad in [0, nRad). The accumulator may be restricted to a band
+// of angles [angFrom, angTo); ang is then counted from angFrom, and memory
+// and voting cost scale with the width of the band.
+//
+// The accumulator is a flat int array (ang * nRad + rad), so voting for one
+// edge pixel walks through memory linearly. Per angle, cos / dRad and
+// sin / dRad are precomputed in 32.32 fixed point, so a vote costs two
+// integer multiply-adds and a shift instead of a floating point division and
+// Math.round(). Results within the fixed point error of a rounding boundary
+// are recomputed in floating point, so the votes are exactly the same as
+// with Math.round((cx * cos + cy * sin) / dRad).
+public class HoughAccumulator {
+
+  private static final int FRACTION_BITS = 32;
+  private static final long FRACTION_MASK = (1L << FRACTION_BITS) - 1;
+
+  private int nAng; // number of angles in [0, pi)
+  private int angFrom; // first angle of the band
+  private int nBand; // number of angles in the band
+  private int nRad; // number of radii
+  private int xC; // x-coordinate of image center
+  private int yC; // y-coordinate of image center
+  private double dAng; // step size of angle
+  private double dRad; // step size of radius
+  private double rMax; // max. radius (center to corner)
+
+  private long[] cosFix; // cos(theta) / dRad in fixed point
+  private long[] sinFix; // sin(theta) / dRad in fixed point
+  private long bias; // rounding (+0.5) and index offset nRad / 2 in fixed point
+  private long tieMargin; // max. fixed point error of a radius
+  private double[] cos; // exact values for radii close to a rounding boundary
+  private double[] sin;
+
+  private int[] accum;
+  private int maxAccum;
+
+  public HoughAccumulator(int width, int height, int nAng, int nRad) {
+    this(width, height, nAng, nRad, 0, nAng);
+  }
+
+  // accumulator for the angles [angFrom, angTo) out of nAng in [0, pi)
+  public HoughAccumulator(int width, int height, int nAng, int nRad, int angFrom, int angTo) {
+    if (angFrom < 0 || angTo > nAng || angFrom >= angTo)
+      throw new IllegalArgumentException("invalid angle band " + angFrom + ".." + angTo);
+    this.nAng = nAng;
+    this.angFrom = angFrom;
+    this.nBand = angTo - angFrom;
+    this.nRad = nRad;
+    xC = width / 2;
+    yC = height / 2;
+    dAng = Math.PI / nAng;
+    rMax = Math.sqrt(xC * xC + yC * yC);
+    dRad = (2 * rMax) / nRad;
+
+    cos = new double[nBand];
+    sin = new double[nBand];
+    cosFix = new long[nBand];
+    sinFix = new long[nBand];
+    double scale = (double) (1L << FRACTION_BITS) / dRad;
+    for (int t = 0; t < nBand; t++) {
+      double theta = dAng * (angFrom + t);
+      cos[t] = Math.cos(theta);
+      sin[t] = Math.sin(theta);
+      cosFix[t] = Math.round(cos[t] * scale);
+      sinFix[t] = Math.round(sin[t] * scale);
+    }
+    bias = ((long) (nRad / 2) << FRACTION_BITS) + (1L << (FRACTION_BITS - 1));
+    // each fixed point factor is off by <= 0.5 units (plus rounding of scale)
+    tieMargin = 2L * (width + height) + 16;
+
+    accum = new int[nBand * nRad];
+  }
+
+  // Vote for all pixels > 0 of an 8-bit image, ignoring a frame of clip
+  // pixels at the image border
+  public void vote(byte[] pixels, int width, int height, int clip) {
+    voteRows(pixels, width, clip, clip, height - clip, accum);
+    updateMax();
+  }
+
+  // Vote for a packed list of center-relative points (see EdgePoints)
+  public void vote(int[] points) {
+    vote(points, points.length);
+  }
+
+  // Vote for the first count points of the list
+  public void vote(int[] points, int count) {
+    votePoints(points, 0, count, accum);
+    updateMax();
+  }
+
+  // Same as vote(), but the image is split into nrParts row bands which vote
+  // concurrently into private accumulators. These are then summed up in
+  // parallel, each task adding a range of cells. The result does not depend
+  // on the number of parts.
+  public void vote(final byte[] pixels, final int width, int height, final int clip, ExecutorService executor, int nrParts) {
+    int rows = height - 2 * clip;
+    if (nrParts <= 1 || rows < 2 * nrParts) {
+      vote(pixels, width, height, clip);
+      return;
+    }
+
+    final int[][] partials = new int[nrParts][];
+    List<Callable<Void>> tasks = new ArrayList<Callable<Void>>();
+    for (int i = 0; i < nrParts; i++) {
+      final int part = i;
+      final int fromRow = clip + (int) ((long) rows * i / nrParts);
+      final int toRow = clip + (int) ((long) rows * (i + 1) / nrParts);
+      tasks.add(new Callable<Void>() {
+        @Override
+        public Void call() {
+          int[] partial = (part == 0) ? accum : new int[accum.length];
+          voteRows(pixels, width, clip, fromRow, toRow, partial);
+          partials[part] = partial;
+          return null;
+        }
+      });
+    }
+    invokeAll(executor, tasks);
+    merge(partials, executor);
+  }
+
+  // Same as vote(int[]), with the list split into nrParts ranges
+  public void vote(int[] points, ExecutorService executor, int nrParts) {
+    vote(points, points.length, executor, nrParts);
+  }
+
+  public void vote(final int[] points, int count, ExecutorService executor, int nrParts) {
+    if (nrParts <= 1 || count < 2 * nrParts) {
+      vote(points, count);
+      return;
+    }
+
+    final int[][] partials = new int[nrParts][];
+    List<Callable<Void>> tasks = new ArrayList<Callable<Void>>();
+    for (int i = 0; i < nrParts; i++) {
+      final int part = i;
+      final int from = (int) ((long) count * i / nrParts);
+      final int to = (int) ((long) count * (i + 1) / nrParts);
+      tasks.add(new Callable<Void>() {
+        @Override
+        public Void call() {
+          int[] partial = (part == 0) ? accum : new int[accum.length];
+          votePoints(points, from, to, partial);
+          partials[part] = partial;
+          return null;
+        }
+      });
+    }
+    invokeAll(executor, tasks);
+    merge(partials, executor);
+  }
+
+  // sum up the partial accumulators into partials[0] == accum
+  private void merge(final int[][] partials, ExecutorService executor) {
+    int nrParts = partials.length;
+    List<Callable<Void>> tasks = new ArrayList<Callable<Void>>();
+    final int cells = accum.length;
+    for (int i = 0; i < nrParts; i++) {
+      final int from = (int) ((long) cells * i / nrParts);
+      final int to = (int) ((long) cells * (i + 1) / nrParts);
+      tasks.add(new Callable<Void>() {
+        @Override
+        public Void call() {
+          for (int p = 1; p < partials.length; p++) {
+            int[] partial = partials[p];
+            for (int cell = from; cell < to; cell++) {
+              accum[cell] += partial[cell];
+            }
+          }
+          return null;
+        }
+      });
+    }
+    invokeAll(executor, tasks);
+    updateMax();
+  }
+
+  private static void invokeAll(ExecutorService executor, List<Callable<Void>> tasks) {
+    try {
+      for (Future<Void> future : executor.invokeAll(tasks)) {
+        future.get();
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IllegalStateException("Hough voting interrupted", e);
+    } catch (ExecutionException e) {
+      throw new IllegalStateException("Hough voting failed", e.getCause());
+    }
+  }
+
+  private void votePoints(int[] points, int from, int to, int[] target) {
+    for (int i = from; i < to; i++) {
+      int point = points[i];
+      vote(EdgePoints.x(point), EdgePoints.y(point), target);
+    }
+  }
+
+  private void voteRows(byte[] pixels, int width, int clip, int fromRow, int toRow, int[] target) {
+    for (int y = fromRow; y < toRow; y++) {
+      int offset = y * width;
+      for (int x = clip; x < width - clip; x++) {
+        if (pixels[offset + x] != 0)
+          vote(x - xC, y - yC, target);
+      }
+    }
+  }
+
+  // Increment the cells of all lines through the point (cx, cy), given
+  // relative to the image center
+  void vote(int cx, int cy, int[] accum) {
+    int nRad = this.nRad;
+    for (int t = 0, cell = 0; t < nBand; t++, cell += nRad) {
+      long value = cx * cosFix[t] + cy * sinFix[t] + bias;
+      int r = (int) (value >> FRACTION_BITS);
+      if (((value + tieMargin) & FRACTION_MASK) < 2 * tieMargin)
+        r = exactRadius(cx, cy, t);
+      if (r >= 0 && r < nRad)
+        accum[cell + r]++;
+    }
+  }
+
+  // Add delta votes to the lines through (cx, cy) and widen the per-angle
+  // intervals [dirtyFrom[ang], dirtyTo[ang]] of changed radii accordingly;
+  // maxAccum is not updated
+  void vote(int cx, int cy, int delta, int[] dirtyFrom, int[] dirtyTo) {
+    for (int t = 0, cell = 0; t < nBand; t++, cell += nRad) {
+      int r = radiusCell(cx, cy, t);
+      if (r >= 0 && r < nRad) {
+        accum[cell + r] += delta;
+        if (r < dirtyFrom[t])
+          dirtyFrom[t] = r;
+        if (r > dirtyTo[t])
+          dirtyTo[t] = r;
+      }
+    }
+  }
+
+  // Vote for a single point (cx, cy) and return the cell with the most votes
+  // among the lines through it (the first one on ties). maxAccum is kept up
+  // to date as an upper bound, it does not decrease when votes are removed.
+  int voteBest(int cx, int cy) {
+    int best = -1;
+    for (int t = 0, cell = 0; t < nBand; t++, cell += nRad) {
+      int r = radiusCell(cx, cy, t);
+      if (r >= 0 && r < nRad) {
+        int votes = ++accum[cell + r];
+        if (best < 0 || votes > accum[best])
+          best = cell + r;
+      }
+    }
+    if (best >= 0 && accum[best] > maxAccum)
+      maxAccum = accum[best];
+    return best;
+  }
+
+  // Remove the votes of a point added by voteBest()
+  void unvote(int cx, int cy) {
+    for (int t = 0, cell = 0; t < nBand; t++, cell += nRad) {
+      int r = radiusCell(cx, cy, t);
+      if (r >= 0 && r < nRad)
+        accum[cell + r]--;
+    }
+  }
+
+  private int radiusCell(int cx, int cy, int t) {
+    long value = cx * cosFix[t] + cy * sinFix[t] + bias;
+    if (((value + tieMargin) & FRACTION_MASK) < 2 * tieMargin)
+      return exactRadius(cx, cy, t);
+    return (int) (value >> FRACTION_BITS);
+  }
+
+  private int exactRadius(int cx, int cy, int t) {
+    return (int) Math.round((cx * cos[t] + cy * sin[t]) / dRad) + nRad / 2;
+  }
+
+  // Coarse-to-fine search: re-vote at factor times finer angle and radius
+  // steps, but only in small windows (+-1 coarse angle step, +-1.5 coarse
+  // radius steps) around the given coarse peak cells. Returns the refined
+  // {angle, radius} of every peak; angles stay in [0, pi).
+  public double[][] refine(byte[] pixels, int width, int height, int clip, int[] peakAng, int[] peakRad, int factor) {
+    return refine(EdgePoints.collect(pixels, width, height, clip), peakAng, peakRad, factor);
+  }
+
+  // Same as refine() for a packed list of center-relative points
+  public double[][] refine(int[] points, int[] peakAng, int[] peakRad, int factor) {
+    return refine(points, points.length, peakAng, peakRad, factor);
+  }
+
+  public double[][] refine(int[] points, int count, int[] peakAng, int[] peakRad, int factor) {
+    int nPeaks = peakAng.length;
+    int nFineAng = 2 * factor + 1;
+    int halfRad = factor + factor / 2;
+    int nFineRad = 2 * halfRad + 1;
+    double fineAng = dAng / factor;
+    double fineRad = dRad / factor;
+
+    // cos / sin of all window angles and the window centers in fine steps
+    double[] winCos = new double[nPeaks * nFineAng];
+    double[] winSin = new double[nPeaks * nFineAng];
+    double[] winCenter = new double[nPeaks];
+    for (int p = 0; p < nPeaks; p++) {
+      for (int k = 0; k < nFineAng; k++) {
+        double theta = angle(peakAng[p]) + (k - factor) * fineAng;
+        winCos[p * nFineAng + k] = Math.cos(theta) / fineRad;
+        winSin[p * nFineAng + k] = Math.sin(theta) / fineRad;
+      }
+      winCenter[p] = radius(peakRad[p]) / fineRad;
+    }
+
+    int[] votes = new int[nPeaks * nFineAng * nFineRad];
+    for (int i = 0; i < count; i++) {
+      int point = points[i];
+      int cx = EdgePoints.x(point);
+      int cy = EdgePoints.y(point);
+      for (int p = 0, w = 0; p < nPeaks; p++) {
+        for (int k = 0; k < nFineAng; k++, w++) {
+          int j = (int) Math.round(cx * winCos[w] + cy * winSin[w] - winCenter[p]) + halfRad;
+          if (j >= 0 && j < nFineRad)
+            votes[w * nFineRad + j]++;
+        }
+      }
+    }
+
+    double[][] lines = new double[nPeaks][];
+    for (int p = 0; p < nPeaks; p++) {
+      int best = p * nFineAng * nFineRad;
+      for (int cell = best; cell < (p + 1) * nFineAng * nFineRad; cell++) {
+        if (votes[cell] > votes[best])
+          best = cell;
+      }
+      int k = (best / nFineRad) % nFineAng;
+      int j = best % nFineRad;
+      double theta = angle(peakAng[p]) + (k - factor) * fineAng;
+      double r = radius(peakRad[p]) + (j - halfRad) * fineRad;
+      if (theta < 0) { // (theta, r) is the same line as (theta + pi, -r)
+        theta += Math.PI;
+        r = -r;
+      } else if (theta >= Math.PI) {
+        theta -= Math.PI;
+        r = -r;
+      }
+      lines[p] = new double[] { theta, r };
+    }
+    return lines;
+  }
+
+  // Remove all votes, e.g. to reuse the accumulator for the next image
+  public void clear() {
+    Arrays.fill(accum, 0);
+    maxAccum = 0;
+  }
+
+  // true if this accumulator votes the same as a new one with these
+  // parameters, which only depend on the image size through its center
+  public boolean fits(int width, int height, int nAng, int nRad, int angFrom, int angTo) {
+    return xC == width / 2 && yC == height / 2 && this.nAng == nAng && this.nRad == nRad && this.angFrom == angFrom && nBand == angTo - angFrom;
+  }
+
+  private void updateMax() {
+    int max = 0;
+    for (int value : accum) {
+      if (value > max)
+        max = value;
+    }
+    maxAccum = max;
+  }
+
+  // votes as [ang * nRad + rad], ang relative to the band
+  public int[] getAccumulator() {
+    return accum;
+  }
+
+  public int getMaxAccum() {
+    return maxAccum;
+  }
+
+  // number of angles in [0, pi)
+  public int getNAng() {
+    return nAng;
+  }
+
+  // first angle and number of angles covered by the accumulator
+  public int getAngleFrom() {
+    return angFrom;
+  }
+
+  public int getBandWidth() {
+    return nBand;
+  }
+
+  public boolean isFullRange() {
+    return nBand == nAng;
+  }
+
+  public int getNRad() {
+    return nRad;
+  }
+
+  public int getCenterX() {
+    return xC;
+  }
+
+  public int getCenterY() {
+    return yC;
+  }
+
+  // angle of the band's ang-th row
+  public double angle(int ang) {
+    return dAng * (angFrom + ang);
+  }
+
+  public double radius(int rad) {
+    return dRad * rad - rMax;
+  }
+
+}
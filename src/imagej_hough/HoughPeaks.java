@@ -0,0 +1,143 @@
+package imagej_hough;
+
+// Finds the k strongest local maxima of a Hough accumulator ([ang * nRad +
+// rad]) in a single pass. A cell is a local maximum if no cell within
+// nonMaxR steps in angle and radius has more votes; among equal cells in
+// that neighbourhood only the first one (in memory order) counts, so a
+// plateau yields one line instead of several. Candidates are collected in a
+// bounded min-heap, so finding k peaks costs O(cells log k), and most cells
+// are rejected by comparing with the heap minimum before their
+// neighbourhood is checked.
+//
+// If the accumulator covers the full angle range [0, pi), the neighbourhood
+// wraps around: angle -1 is angle nAng - 1 with the radius mirrored, since
+// (theta, r) and (theta + pi, -r) describe the same line.
+public class HoughPeaks {
+
+  private int nAng;
+  private int nRad;
+  private int nonMaxR;
+  private boolean wrap;
+
+  public HoughPeaks(int nAng, int nRad, int nonMaxR, boolean wrap) {
+    this.nAng = nAng;
+    this.nRad = nRad;
+    this.nonMaxR = nonMaxR;
+    this.wrap = wrap;
+  }
+
+  // Store the up to k strongest peaks with angle index in [minAng, maxAng)
+  // in peakAng / peakRad, strongest first; returns the number found
+  public int find(int[] accum, int minAng, int maxAng, int k, int[] peakAng, int[] peakRad) {
+    if (k <= 0)
+      return 0;
+    int[] heap = new int[k]; // cells, weakest at heap[0]
+    int size = 0;
+
+    for (int ang = Math.max(minAng, 0); ang < Math.min(maxAng, nAng); ang++) {
+      for (int rad = 0, cell = ang * nRad; rad < nRad; rad++, cell++) {
+        int value = accum[cell];
+        if (value == 0 || (size == k && !stronger(accum, cell, heap[0])))
+          continue;
+        if (!isPeak(accum, ang, rad))
+          continue;
+
+        if (size < k) {
+          heap[size] = cell;
+          siftUp(accum, heap, size++);
+        } else {
+          heap[0] = cell;
+          siftDown(accum, heap, size);
+        }
+      }
+    }
+
+    // pop weakest first into the back of the result
+    for (int i = size - 1; i >= 0; i--) {
+      int cell = heap[0];
+      heap[0] = heap[i];
+      siftDown(accum, heap, i);
+      peakAng[i] = cell / nRad;
+      peakRad[i] = cell % nRad;
+    }
+    return size;
+  }
+
+  // Copy of the accumulator with all cells except local maxima set to 0
+  public int[] suppress(int[] accum) {
+    int[] result = new int[accum.length];
+    for (int ang = 0, cell = 0; ang < nAng; ang++) {
+      for (int rad = 0; rad < nRad; rad++, cell++) {
+        if (accum[cell] > 0 && isPeak(accum, ang, rad))
+          result[cell] = accum[cell];
+      }
+    }
+    return result;
+  }
+
+  boolean isPeak(int[] accum, int ang, int rad) {
+    int cell = ang * nRad + rad;
+    int value = accum[cell];
+
+    for (int da = -nonMaxR; da <= nonMaxR; da++) {
+      int a = ang + da;
+      boolean mirrored = false;
+      if (a < 0 || a >= nAng) {
+        if (!wrap)
+          continue;
+        a = (a < 0) ? a + nAng : a - nAng;
+        mirrored = true;
+      }
+
+      for (int dr = -nonMaxR; dr <= nonMaxR; dr++) {
+        int r = mirrored ? nRad - (rad + dr) : rad + dr;
+        if (r < 0 || r >= nRad)
+          continue;
+        int other = a * nRad + r;
+        if (other == cell)
+          continue;
+        if (accum[other] > value || (accum[other] == value && other < cell))
+          return false;
+      }
+    }
+    return true;
+  }
+
+  // stronger = more votes, or equal votes and earlier cell
+  private static boolean stronger(int[] accum, int a, int b) {
+    return accum[a] > accum[b] || (accum[a] == accum[b] && a < b);
+  }
+
+  private static void siftUp(int[] accum, int[] heap, int i) {
+    while (i > 0) {
+      int parent = (i - 1) / 2;
+      if (!stronger(accum, heap[parent], heap[i]))
+        break;
+      swap(heap, i, parent);
+      i = parent;
+    }
+  }
+
+  private static void siftDown(int[] accum, int[] heap, int size) {
+    int i = 0;
+    while (true) {
+      int weakest = i;
+      int left = 2 * i + 1, right = left + 1;
+      if (left < size && stronger(accum, heap[weakest], heap[left]))
+        weakest = left;
+      if (right < size && stronger(accum, heap[weakest], heap[right]))
+        weakest = right;
+      if (weakest == i)
+        return;
+      swap(heap, i, weakest);
+      i = weakest;
+    }
+  }
+
+  private static void swap(int[] heap, int i, int j) {
+    int tmp = heap[i];
+    heap[i] = heap[j];
+    heap[j] = tmp;
+  }
+
+}
@@ -0,0 +1,127 @@
+package imagej_hough;
+
+import ij.ImagePlus;
+import ij.process.ColorProcessor;
+import ij.process.ImageConverter;
+import imagej_common.BufferPool;
+import imagej_common.Kernel;
+import imagej_common.KernelFilter;
+import imagej_common.Metrics;
+import imagej_common.PixelKernels;
+import imagej_hough.HoughTransform.HoughLine;
+
+// Laplace -> binary -> Hough chain on pixel buffers instead of images: the
+// stages pass primitive arrays by reference, the gray input is only
+// converted if it is not 8-bit yet, and the Laplace plane and the edge point
+// list are borrowed from a BufferPool and returned after each image. Only
+// the edge points of the binary stage are used, so it thresholds the Laplace
+// plane in place instead of filling a binary plane. Nothing is duplicated,
+// shown or saved, and the Hough accumulator is reused, so equally sized
+// images allocate next to nothing after the first one. Gives the same lines
+// as LaplaceTransform, BinaryTransform and HoughTransform with the same
+// parameters. Keeps its filter and accumulator, so each thread needs its own
+// pipeline.
+public class HoughPipeline {
+
+  private final static int pixelClip = 2; // clip this amount of pixels from
+                                          // image frame
+  private HoughTransform mHough;
+  private int mThreshold;
+  private BufferPool mPool = BufferPool.getShared();
+  private KernelFilter mLaplace = new KernelFilter(Kernel.laplacian());
+  private PixelKernels mKernels = PixelKernels.get();
+  private int[] mHits = new int[0]; // edge positions of a row
+  private int mEdgeCount;
+
+  // hough: e.g. new HoughTransform(nrLines, angleFrom, angleTo, nonMaxR)
+  public HoughPipeline(HoughTransform hough, int threshold) {
+    mHough = hough;
+    mThreshold = threshold;
+    mLaplace.setMargin(pixelClip);
+  }
+
+  public void setPool(BufferPool pool) {
+    mPool = pool;
+  }
+
+  public HoughLine[] process(ImagePlus image) {
+    int width = image.getWidth(), height = image.getHeight();
+    if (image.getType() == ImagePlus.GRAY8)
+      return process((byte[]) image.getProcessor().getPixels(), width, height);
+
+    if (image.getType() == ImagePlus.COLOR_RGB) {
+      byte[] gray = mPool.borrowBytes(width * height);
+      try {
+        toGray((ColorProcessor) image.getProcessor(), gray);
+        return process(gray, width, height);
+      } finally {
+        mPool.release(gray);
+      }
+    }
+
+    // other types are rare, convert them like the image based stages
+    ImagePlus gray = image.duplicate();
+    new ImageConverter(gray).convertToGray8();
+    return process((byte[]) gray.getProcessor().getPixels(), width, height);
+  }
+
+  // gray: 8-bit pixels of a width x height image, only read
+  public HoughLine[] process(byte[] gray, int width, int height) {
+    int size = width * height;
+    byte[] laplace = mPool.borrowBytes(size);
+    int[] points = mPool.borrowInts(size);
+    try {
+      // the frame of pixelClip pixels is neither written nor read, so the
+      // old contents of the pooled buffers do not matter
+      Metrics.Span span = Metrics.start("laplace");
+      try {
+        mLaplace.apply(gray, width, height, laplace);
+      } finally {
+        span.end(size);
+      }
+
+      if (mHits.length < width)
+        mHits = new int[width];
+      int xC = width / 2, yC = height / 2;
+      int count = 0;
+      span = Metrics.start("binary");
+      try {
+        for (int y = pixelClip; y < height - pixelClip; y++) {
+          int found = mKernels.threshold(laplace, y * width + pixelClip, width - 2 * pixelClip, mThreshold, laplace, mHits);
+          for (int i = 0; i < found; i++) {
+            points[count++] = EdgePoints.pack(pixelClip + mHits[i] - xC, y - yC);
+          }
+        }
+      } finally {
+        span.end(size, count);
+      }
+      mEdgeCount = count;
+
+      return mHough.findLines(points, count, width, height);
+    } finally {
+      mPool.release(points);
+      mPool.release(laplace);
+    }
+  }
+
+  // Stop the voting threads of the Hough transform
+  public void close() {
+    mHough.close();
+  }
+
+  // number of edge pixels of the last image
+  public int getEdgeCount() {
+    return mEdgeCount;
+  }
+
+  // Same as ImageConverter.convertToGray8() with the current RGB weights
+  private static void toGray(ColorProcessor ip, byte[] gray) {
+    double[] w = (ip.getRGBWeights() != null) ? ip.getRGBWeights() : ColorProcessor.getWeightingFactors();
+    int[] pixels = (int[]) ip.getPixels();
+    for (int i = 0; i < pixels.length; i++) {
+      int c = pixels[i];
+      gray[i] = (byte) (((c >> 16) & 0xff) * w[0] + ((c >> 8) & 0xff) * w[1] + (c & 0xff) * w[2] + 0.5);
+    }
+  }
+
+}
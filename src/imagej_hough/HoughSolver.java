@@ -3,44 +3,93 @@ package imagej_hough;
 import java.awt.Color;
 
 import ij.ImagePlus;
+import imagej_common.AsyncImageWriter;
+import imagej_common.Metrics;
 import imagej_hough.HoughTransform.HoughLine;
 
 public class HoughSolver {
 
+  private static final double DESKEW_TOLERANCE = Math.PI / 18; // 10 degrees
+
   public static void main(String[] args) {
 
     ImagePlus imgPolygonOriginal = new ImagePlus("img/Polygon2.png");
     HoughTransform htPolygon = new HoughTransform(imgPolygonOriginal, imgPolygonOriginal, 4, 0, Math.PI, 1, Color.WHITE, Color.GRAY);
     htPolygon.process(true);
 
+    // same image with the progressive probabilistic Hough: finite segments
+    HoughTransform htSegments = new HoughTransform(imgPolygonOriginal, imgPolygonOriginal, 4, 0, Math.PI, 1, Color.WHITE, Color.GRAY);
+    htSegments.setProbabilistic(50, 30, 3);
+    htSegments.process(true);
+
     ImagePlus imgShuttleOriginal = new ImagePlus("img/Shuttle2.png");
     imgShuttleOriginal.show();
 
-    LaplaceTransform lpShuttle = new LaplaceTransform(imgShuttleOriginal);
-    ImagePlus imgShuttleLaplace = lpShuttle.process(false);
+    deskew(imgShuttleOriginal, true);
+    imgShuttleOriginal.show();
+
+    AsyncImageWriter.getShared().flush();
+    Metrics.dump(System.out);
+  }
+
+  // Laplace / threshold -> Hough chain: estimates the skew of the image from its
+  // dominant near-horizontal lines and rotates the image in place. Returns the
+  // rotation angle in degrees.
+  public static int deskew(ImagePlus imgOriginal, boolean showResult) {
+
+    // Laplace and threshold in one pass; Hough votes for the edge list only
+    LaplaceEdgeTransform edgeTransform = new LaplaceEdgeTransform(imgOriginal, 220);
+    int[] edgePoints = edgeTransform.process(false);
+
+    HoughTransform htTransform = new HoughTransform(imgOriginal, imgOriginal, 16, Math.PI / 4, Math.PI / 2, 2, Color.RED, Color.BLUE);
+    htTransform.setEdgePoints(edgePoints);
+    htTransform.process(showResult);
 
-    BinaryTransform btShuttle = new BinaryTransform(imgShuttleLaplace, 220);
-    ImagePlus imgShuttleBinary = btShuttle.process(false);
+    return rotate(imgOriginal, htTransform.getLines());
+  }
 
-    HoughTransform htShuttle = new HoughTransform(imgShuttleBinary, imgShuttleOriginal, 16, Math.PI / 4, Math.PI / 2, 2, Color.RED, Color.BLUE);
-    htShuttle.process(true);
+  // Pipeline for deskew(HoughPipeline, ImagePlus) with the parameters of
+  // deskew(ImagePlus, boolean), one per thread
+  public static HoughPipeline createDeskewPipeline() {
+    return new HoughPipeline(new HoughTransform(16, Math.PI / 4, Math.PI / 2, 2), 220);
+  }
 
-    HoughLine[] lines = htShuttle.getLines();
-    double angle = 0;
+  // Same as deskew(ImagePlus, boolean) on pooled pixel buffers, without the
+  // intermediate images
+  public static int deskew(HoughPipeline pipeline, ImagePlus imgOriginal) {
+    return rotate(imgOriginal, pipeline.process(imgOriginal));
+  }
 
+  private static int rotate(ImagePlus imgOriginal, HoughLine[] lines) {
+    if (lines.length == 0) {
+      System.out.println("no lines found, image not rotated");
+      return 0;
+    }
+    // Vote-weighted mean angle of the lines parallel to the strongest one
+    // (within DESKEW_TOLERANCE); weaker lines at other angles, e.g. oblique
+    // edges, would pull a plain mean away from the dominant direction
+    HoughLine strongest = lines[0];
     for (HoughLine line : lines) {
-      angle += line.angle();
+      if (line.votes() > strongest.votes())
+        strongest = line;
+    }
+    double angle = 0, weight = 0;
+    for (HoughLine line : lines) {
+      if (Math.abs(line.angle() - strongest.angle()) > DESKEW_TOLERANCE)
+        continue;
+      int votes = Math.max(1, line.votes());
+      angle += votes * line.angle();
+      weight += votes;
     }
 
-    angle /= lines.length;
+    angle /= weight;
 
     int rotAng = (int) (90 - 180 * (angle / Math.PI));
     System.out.println("calculated rotation angle: " + rotAng);
 
-    imgShuttleOriginal.getProcessor().rotate(rotAng);
-    imgShuttleOriginal.updateAndDraw();
-    imgShuttleOriginal.show();
-
+    imgOriginal.getProcessor().rotate(rotAng);
+    imgOriginal.updateAndDraw();
+    return rotAng;
   }
 
 }
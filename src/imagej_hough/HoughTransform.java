@@ -1,12 +1,16 @@
 package imagej_hough;
 
 import java.awt.Color;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
 
 import ij.ImagePlus;
 import ij.gui.NewImage;
-import ij.plugin.PNG_Writer;
 import ij.plugin.filter.PlugInFilter;
 import ij.process.*;
+import imagej_common.AsyncImageWriter;
+import imagej_common.Metrics;
 
 public class HoughTransform implements PlugInFilter {
 
@@ -18,20 +22,44 @@ public class HoughTransform implements PlugInFilter {
   private int mNrLines; // number of lines to search
   private double mAngleFrom; // minimal angle in Bogenmass
   private double mAngleTo; // maximal angle in Bogenmass
-  private int mNonMaxR; // TODO: use as radius for non-max-suppression
+  private int mNonMaxR; // radius for non-max-suppression
   private Color mRadiusColor;
   private Color mLineColor;
   private HoughLine[] mFoundLines; // array for strongest lines
   private boolean mShowResult;
+  private int mThreads = 1; // threads for Hough voting
+  private ExecutorService mExecutor; // voting threads, kept until close()
+  private int mNAng = 256; // number of angles
+  private int mNRad = 256; // number of radii
+  private int mRefineFactor = 1; // fine / coarse resolution (1: no refinement)
+  private int mSegmentThreshold = 0; // votes for a segment (0: standard Hough)
+  private int mMinLength; // min. segment length in pixels
+  private int mMaxGap; // max. gap within a segment in pixels
+  private boolean mIncrementalMode; // keep the accumulator between frames
+  private IncrementalHough mIncremental;
+  private int[] mEdgePoints; // packed edge pixels of the input image or null
+  private HoughAccumulator mAccumulator; // kept by findLines() for the next image
 
   class HoughLine {
     private double mAngle, mRadius;
+    private int mVotes; // accumulator votes of the peak, 0 if unknown
+    private int[] mSegment; // {x1, y1, x2, y2} or null for an infinite line
 
     public HoughLine(double angle, double radius) {
       mAngle = angle;
       mRadius = radius;
     }
 
+    public HoughLine(double angle, double radius, int votes) {
+      this(angle, radius);
+      mVotes = votes;
+    }
+
+    public HoughLine(double angle, double radius, int[] segment) {
+      this(angle, radius);
+      mSegment = segment;
+    }
+
     public double radius() {
       return mRadius;
     }
@@ -40,11 +68,24 @@ public class HoughTransform implements PlugInFilter {
       return mAngle;
     }
 
+    public int votes() {
+      return mVotes;
+    }
+
+    public boolean isSegment() {
+      return mSegment != null;
+    }
+
+    // end points {x1, y1, x2, y2} of a segment
+    public int[] segment() {
+      return mSegment;
+    }
+
   }
 
   public HoughTransform(ImagePlus inputImage, ImagePlus originalImage, int nrLines, double angleFrom, double angleTo, int nonMaxR, Color radiusColor,
       Color lineColor) {
-    mInputImage = inputImage.duplicate();
+    mInputImage = inputImage;
     mOriginalImage = originalImage.duplicate();
     mNrLines = nrLines;
     mAngleFrom = angleFrom;
@@ -52,19 +93,35 @@ public class HoughTransform implements PlugInFilter {
     mNonMaxR = nonMaxR;
     mRadiusColor = radiusColor;
     mLineColor = lineColor;
-    mFoundLines = new HoughLine[mNrLines];
+    mFoundLines = new HoughLine[0];
 
     mImageName = inputImage.getShortTitle();
   }
 
+  // Only for findLines() on pixel buffers, no images are read or written
+  public HoughTransform(int nrLines, double angleFrom, double angleTo, int nonMaxR) {
+    mNrLines = nrLines;
+    mAngleFrom = angleFrom;
+    mAngleTo = angleTo;
+    mNonMaxR = nonMaxR;
+    mFoundLines = new HoughLine[0];
+    mImageName = "";
+  }
+
   public ImagePlus process(boolean showResult) {
     System.out.println("[hough] processing image " + mImageName);
     mShowResult = showResult;
 
-    // convert image to grayscale for hough analysis
-    ImageConverter ic = new ImageConverter(mInputImage);
-    ic.convertToGray8();
-    mInputImage.updateAndDraw();
+    // convert image to grayscale for hough analysis; the input is only read,
+    // so a gray image, or any image if only its edge point list is voted, is
+    // used as it is
+    boolean pointsOnly = mEdgePoints != null && mSegmentThreshold == 0 && !mIncrementalMode;
+    if (mInputImage.getType() != ImagePlus.GRAY8 && !pointsOnly) {
+      mInputImage = mInputImage.duplicate();
+      ImageConverter ic = new ImageConverter(mInputImage);
+      ic.convertToGray8();
+      mInputImage.updateAndDraw();
+    }
 
     setup("", mInputImage);
     run(mInputImage.getProcessor());
@@ -72,10 +129,102 @@ public class HoughTransform implements PlugInFilter {
     return mOriginalImage;
   }
 
+  // Process the next frame of a sequence: the edge image inputImage replaces
+  // the previous one, lines are drawn into originalImage. In incremental mode
+  // only the changes against the previous frame are voted.
+  public ImagePlus process(ImagePlus inputImage, ImagePlus originalImage, boolean showResult) {
+    mInputImage = inputImage;
+    mOriginalImage = originalImage.duplicate();
+    mImageName = inputImage.getShortTitle();
+    mEdgePoints = null;
+    return process(showResult);
+  }
+
+  // vote with several threads (1 = single-threaded)
+  public void setThreads(int threads) {
+    if (threads != mThreads)
+      close();
+    mThreads = threads;
+  }
+
+  // Stop the voting threads; they are started again when needed
+  public void close() {
+    if (mExecutor != null) {
+      mExecutor.shutdown();
+      mExecutor = null;
+    }
+  }
+
+  // resolution of the Hough accumulator (angles over [0, pi) and radii)
+  public void setResolution(int nAng, int nRad) {
+    mNAng = nAng;
+    mNRad = nRad;
+  }
+
+  // Coarse-to-fine search: after finding the lines on the accumulator grid,
+  // re-vote in small windows around them with factor times finer steps
+  public void setRefinement(int factor) {
+    mRefineFactor = factor;
+  }
+
+  // Progressive probabilistic mode: find up to nrLines segments with at least
+  // threshold votes and minLength pixels, allowing gaps of maxGap pixels
+  public void setProbabilistic(int threshold, int minLength, int maxGap) {
+    mSegmentThreshold = threshold;
+    mMinLength = minLength;
+    mMaxGap = maxGap;
+  }
+
+  // Keep the accumulator between calls of process() and only add / remove
+  // the votes of edge pixels that changed since the previous frame. The Hough
+  // space images are then only created when the result is shown.
+  public void setIncremental(boolean incremental) {
+    mIncrementalMode = incremental;
+    if (!incremental)
+      mIncremental = null;
+  }
+
+  // Vote for this packed list of center-relative edge points (see
+  // EdgePoints, e.g. from BinaryTransform.getEdgePoints()) instead of
+  // scanning the input image for pixels > 0. The list must hold the same
+  // points as the input image without its pixelClip border.
+  public void setEdgePoints(int[] edgePoints) {
+    mEdgePoints = edgePoints;
+  }
+
   public HoughLine[] getLines() {
     return mFoundLines;
   }
 
+  // Lines of the first count points of a packed list of center-relative edge
+  // points (see EdgePoints) of a width x height image, without creating,
+  // showing or saving any images. The accumulator is kept and only cleared
+  // for the next call with the same image size.
+  public HoughLine[] findLines(int[] points, int count, int width, int height) {
+    double dAng = (Math.PI / mNAng);
+    int minAng = (int) (mAngleFrom / dAng);
+    int maxAng = (int) (mAngleTo / dAng);
+    int bandFrom = bandFrom(minAng, maxAng, mNAng);
+    int bandTo = bandTo(minAng, maxAng, mNAng);
+
+    if (mAccumulator == null || !mAccumulator.fits(width, height, mNAng, mNRad, bandFrom, bandTo))
+      mAccumulator = new HoughAccumulator(width, height, mNAng, mNRad, bandFrom, bandTo);
+    else
+      mAccumulator.clear();
+
+    Metrics.Span span = Metrics.start("hough.vote");
+    try {
+      if (mThreads > 1)
+        mAccumulator.vote(points, count, getExecutor(), mThreads);
+      else
+        mAccumulator.vote(points, count);
+    } finally {
+      span.end((long) width * height, count);
+    }
+    findPeaks(mAccumulator, minAng - bandFrom, maxAng - bandFrom, null, width, height, points, count);
+    return mFoundLines;
+  }
+
   @Override
   public int setup(String arg, ImagePlus imp) {
     return DOES_8G;
@@ -83,133 +232,205 @@ public class HoughTransform implements PlugInFilter {
 
   @Override
   public void run(ImageProcessor ip) {
-    long msStart = System.currentTimeMillis();
-
     // Set up Hough space
-    final int nAng = 256; // number of angels
-    final int nRad = 256; // number of radii
+    final int nAng = mNAng; // number of angels
+    final int nRad = mNRad; // number of radii
 
-    int xC = ip.getWidth() / 2; // x-coordinate of image center
-    int yC = ip.getHeight() / 2; // y-coordinate of image center
     double dAng = (Math.PI / nAng); // step size of angle
     int minAng = (int) (mAngleFrom / dAng);
     int maxAng = (int) (mAngleTo / dAng);
-    double rMax = Math.sqrt(xC * xC + yC * yC); // max. radius (center to
-                                                // corner)
-    double dRad = (2 * rMax) / nRad; // step size radius
-    int[][] hough1 = new int[nAng][nRad]; // Hough accumulator space
-    int[][] hough2 = new int[nAng][nRad]; // Hough accumulator space w. non max.
-                                          // supression
-
-    int maxAccum = 0; // max. value in Hough space
-    double[] cos = new double[nAng]; // array for precalculated cos values
-    double[] sin = new double[nAng]; // array for precalculated sin values
-
-    // Precalculate cos & sin values
-    for (int t = 0; t < nAng; t++) {
-      double theta = dAng * t;
-      cos[t] = Math.cos(theta);
-      sin[t] = Math.sin(theta);
+
+    if (mSegmentThreshold > 0) {
+      findSegments(ip, nAng, nRad, minAng, maxAng);
+      drawLines(ip, ip.getWidth() / 2, ip.getHeight() / 2);
+      saveResult(mImageName + "_hough-segments");
+      return;
+    }
+
+    // Only vote for the requested angles plus a margin for the non maximum
+    // suppression at the band edges
+    int bandFrom = bandFrom(minAng, maxAng, nAng);
+    int bandTo = bandTo(minAng, maxAng, nAng);
+    if (mIncrementalMode) {
+      runIncremental(ip, nAng, nRad, minAng, maxAng, bandFrom, bandTo);
+      return;
     }
+    HoughAccumulator accumulator = new HoughAccumulator(ip.getWidth(), ip.getHeight(), nAng, nRad, bandFrom, bandTo);
+    int nBand = accumulator.getBandWidth();
+    int xC = accumulator.getCenterX(); // x-coordinate of image center
+    int yC = accumulator.getCenterY(); // y-coordinate of image center
 
     // Fill Hough array & keep maximum
-    for (int y = (0 + pixelClip); y < (ip.getHeight() - pixelClip); y++) {
-      for (int x = (0 + pixelClip); x < (ip.getWidth() - pixelClip); x++) {
-        int pixel = ip.getPixel(x, y);
-        if (pixel > 0) {
-          int cx = x - xC, cy = y - yC;
-
-          // Calculate for all theta angles the radius r & increment the hough
-          // array
-          for (int t = 0; t < nAng; t++) {
-            int r = (int) Math.round((cx * cos[t] + cy * sin[t]) / dRad) + nRad / 2;
-            if (r >= 0 && r < nRad) {
-              hough1[t][r]++;
-              if (hough1[t][r] > maxAccum) {
-                maxAccum = hough1[t][r];
-              }
-            }
-          }
-        }
-      }
+    Metrics.Span span = Metrics.start("hough.vote");
+    try {
+      if (mThreads > 1 && mEdgePoints != null)
+        accumulator.vote(mEdgePoints, getExecutor(), mThreads);
+      else if (mThreads > 1)
+        accumulator.vote((byte[]) ip.getPixels(), ip.getWidth(), ip.getHeight(), pixelClip, getExecutor(), mThreads);
+      else if (mEdgePoints != null)
+        accumulator.vote(mEdgePoints);
+      else
+        accumulator.vote((byte[]) ip.getPixels(), ip.getWidth(), ip.getHeight(), pixelClip);
+    } finally {
+      span.end((long) ip.getWidth() * ip.getHeight(), (mEdgePoints != null) ? mEdgePoints.length : -1);
     }
+    int[] hough1 = accumulator.getAccumulator(); // Hough accumulator space [(ang - bandFrom) * nRad + rad]
+    int maxAccum = accumulator.getMaxAccum(); // max. value in Hough space
 
-    long msSpace = System.currentTimeMillis();
-
-    // Build non maximum supression with mask (size: mNonMaxR) into hough2
-    for (int ang = 0; ang < nAng; ang++) {
-      for (int rad = 0; rad < nRad; rad++) {
-        int max = 0;
-        if (ang > 0) {
-          max = Math.max(max, hough1[ang - 1][rad]); // pixel left
-          if (rad > 0) {
-            max = Math.max(max, hough1[ang - 1][rad - 1]); // pixel bottom left
-            max = Math.max(max, hough1[ang][rad - 1]); // pixel bottom
-          }
-          if (rad < nRad - 1) {
-            max = Math.max(max, hough1[ang - 1][rad + 1]); // pixel top left
-            max = Math.max(max, hough1[ang][rad + 1]); // pixel top
-          }
-        }
-        if (ang < nAng - 1) {
-          max = Math.max(max, hough1[ang + 1][rad]); // pixel right
-          if (rad > 0) {
-            max = Math.max(max, hough1[ang + 1][rad - 1]); // pixel bottom right
-          }
-          if (rad < nRad - 1) {
-            max = Math.max(max, hough1[ang + 1][rad + 1]); // pixel top right
-          }
-        }
+    // Get n strongest lines (local maxima within mNonMaxR) into array lines
+    HoughPeaks peaks = (mEdgePoints != null) ? findPeaks(accumulator, minAng - bandFrom, maxAng - bandFrom, null, 0, 0, mEdgePoints, mEdgePoints.length)
+        : findPeaks(accumulator, minAng - bandFrom, maxAng - bandFrom, (byte[]) ip.getPixels(), ip.getWidth(), ip.getHeight(), null, 0);
+
+    int[] hough2; // Hough accumulator space w. non max. supression
+    span = Metrics.start("hough.nms");
+    try {
+      hough2 = peaks.suppress(hough1);
+    } finally {
+      span.end();
+    }
+
+    createImage(hough1, nBand, nRad, maxAccum, mImageName + "_hough-space", mShowResult);
+    createImage(hough2, nBand, nRad, maxAccum, mImageName + "_hough-space_nonMaxEl", mShowResult);
+
+    drawLines(ip, xC, yC);
+    saveResult(mImageName + "_hough");
+
+    System.out.println("maxAccum: " + maxAccum);
+  }
+
+  // First and last + 1 angle voted for the angles [minAng, maxAng): a margin
+  // of mNonMaxR for the non maximum suppression at the band edges, or all
+  // angles if the margin crosses 0 or pi, so that the peaks there are
+  // compared with the mirrored cells on the other side
+  private int bandFrom(int minAng, int maxAng, int nAng) {
+    return wrapsAround(minAng, maxAng, nAng) ? 0 : minAng - mNonMaxR;
+  }
 
-        if (hough1[ang][rad] < max) {
-          hough2[ang][rad] = 0; // non maximum suppression
-        } else {
-          hough2[ang][rad] = hough1[ang][rad];
+  private int bandTo(int minAng, int maxAng, int nAng) {
+    return wrapsAround(minAng, maxAng, nAng) ? nAng : maxAng + mNonMaxR;
+  }
+
+  private boolean wrapsAround(int minAng, int maxAng, int nAng) {
+    return minAng - mNonMaxR < 0 || maxAng + mNonMaxR > nAng;
+  }
+
+  private ExecutorService getExecutor() {
+    if (mExecutor == null) {
+      mExecutor = Executors.newFixedThreadPool(mThreads, new ThreadFactory() {
+        @Override
+        public Thread newThread(Runnable r) {
+          Thread thread = new Thread(r, "hough-vote");
+          thread.setDaemon(true);
+          return thread;
         }
+      });
+    }
+    return mExecutor;
+  }
 
-      }
+  // Strongest lines of the filled accumulator between the band indices
+  // minAng and maxAng into mFoundLines, refined with the edge pixels of
+  // either the image pixels or the first count of the points
+  private HoughPeaks findPeaks(HoughAccumulator accumulator, int minAng, int maxAng, byte[] pixels, int width, int height, int[] points, int count) {
+    HoughPeaks peaks = new HoughPeaks(accumulator.getBandWidth(), mNRad, mNonMaxR, accumulator.isFullRange());
+    int[] lineAng = new int[mNrLines];
+    int[] lineRad = new int[mNrLines];
+    int found;
+    Metrics.Span span = Metrics.start("hough.peaks");
+    try {
+      found = peaks.find(accumulator.getAccumulator(), minAng, maxAng, mNrLines, lineAng, lineRad);
+    } finally {
+      span.end();
     }
 
-    // Build histogram of the array hough2
-    int[] hist = new int[maxAccum + 1];
-    for (int ang = 0; ang < nAng; ang++) {
-      for (int rad = 0; rad < nRad; rad++) {
-        hist[hough2[ang][rad]]++;
-      }
+    int[] votes = accumulator.getAccumulator();
+    mFoundLines = new HoughLine[found];
+    for (int i = 0; i < found; i++) {
+      mFoundLines[i] = new HoughLine(accumulator.angle(lineAng[i]), accumulator.radius(lineRad[i]), votes[lineAng[i] * mNRad + lineRad[i]]);
     }
 
-    // Get n strongest lines into array lines
-    int found = 0;
-    int value = maxAccum + 1;
-    int amount = 0;
-
-    while (found < mNrLines) {
-      do {
-        value--;
-        amount = hist[value];
-      } while (amount == 0);
-
-      for (int ang = minAng; ang < maxAng; ang++) {
-        for (int rad = 0; rad < nRad; rad++) {
-          if (hough2[ang][rad] == value) {
-            mFoundLines[found] = new HoughLine(dAng * ang, dRad * rad - rMax);
-            found++;
-          }
-          if (found >= mNrLines)
-            break;
-        }
-        if (found >= mNrLines)
-          break;
+    // Refine the lines at a higher resolution around the coarse peaks
+    if (mRefineFactor > 1) {
+      double[][] fine;
+      span = Metrics.start("hough.refine");
+      try {
+        fine = (points != null) ? accumulator.refine(points, count, lineAng, lineRad, mRefineFactor)
+            : accumulator.refine(pixels, width, height, pixelClip, lineAng, lineRad, mRefineFactor);
+      } finally {
+        span.end(0, (points != null) ? count : -1);
       }
+      for (int i = 0; i < found; i++) {
+        mFoundLines[i] = new HoughLine(fine[i][0], fine[i][1], mFoundLines[i].votes());
+      }
+    }
+    return peaks;
+  }
 
+  private void runIncremental(ImageProcessor ip, int nAng, int nRad, int minAng, int maxAng, int bandFrom, int bandTo) {
+    int changed = -1;
+    Metrics.Span span = Metrics.start("hough.update");
+    try {
+      if (mIncremental == null || !mIncremental.fits(ip.getWidth(), ip.getHeight(), nAng, nRad, bandFrom, bandTo))
+        mIncremental = new IncrementalHough(ip.getWidth(), ip.getHeight(), pixelClip, nAng, nRad, bandFrom, bandTo, mNonMaxR);
+      changed = mIncremental.update((byte[]) ip.getPixels());
+    } finally {
+      span.end((long) ip.getWidth() * ip.getHeight(), changed);
+    }
+    HoughAccumulator accumulator = mIncremental.getAccumulator();
+
+    int[] lineAng = new int[mNrLines];
+    int[] lineRad = new int[mNrLines];
+    int found;
+    span = Metrics.start("hough.peaks");
+    try {
+      found = mIncremental.getLines(minAng - bandFrom, maxAng - bandFrom, mNrLines, lineAng, lineRad);
+    } finally {
+      span.end();
+    }
+    int[] votes = accumulator.getAccumulator();
+    mFoundLines = new HoughLine[found];
+    for (int i = 0; i < found; i++) {
+      mFoundLines[i] = new HoughLine(accumulator.angle(lineAng[i]), accumulator.radius(lineRad[i]), votes[lineAng[i] * nRad + lineRad[i]]);
+    }
+
+    int maxAccum = mIncremental.getMaxAccum();
+    if (mShowResult) {
+      createImage(accumulator.getAccumulator(), accumulator.getBandWidth(), nRad, maxAccum, mImageName + "_hough-space", true);
+      createImage(mIncremental.getSuppressed(), accumulator.getBandWidth(), nRad, maxAccum, mImageName + "_hough-space_nonMaxEl", true);
     }
 
-    long msLines = System.currentTimeMillis();
+    drawLines(ip, accumulator.getCenterX(), accumulator.getCenterY());
+    saveResult(mImageName + "_hough");
 
-    createImage(hough1, maxAccum, mImageName + "_hough-space");
-    createImage(hough2, maxAccum, mImageName + "_hough-space_nonMaxEl");
+    System.out.println("maxAccum: " + maxAccum + ", changed edge pixels: " + changed);
+  }
+
+  private void findSegments(ImageProcessor ip, int nAng, int nRad, int minAng, int maxAng) {
+    HoughAccumulator accumulator = new HoughAccumulator(ip.getWidth(), ip.getHeight(), nAng, nRad, minAng, Math.min(nAng, Math.max(maxAng, minAng + 1)));
+    ProbabilisticHough hough = new ProbabilisticHough(accumulator, mSegmentThreshold, mMinLength, mMaxGap);
+    int[][] segments = new int[mNrLines][];
+    int[] lineAng = new int[mNrLines];
+    int[] lineRad = new int[mNrLines];
+    int found;
+    Metrics.Span span = Metrics.start("hough.segments");
+    try {
+      found = hough.find((byte[]) ip.getPixels(), ip.getWidth(), ip.getHeight(), pixelClip, mNrLines, segments, lineAng, lineRad);
+    } finally {
+      span.end((long) ip.getWidth() * ip.getHeight(), hough.getEdges());
+    }
+
+    mFoundLines = new HoughLine[found];
+    for (int i = 0; i < found; i++) {
+      mFoundLines[i] = new HoughLine(accumulator.angle(lineAng[i]), accumulator.radius(lineRad[i]), segments[i]);
+    }
 
-    // Add distance lines to image
+    createImage(accumulator.getAccumulator(), accumulator.getBandWidth(), nRad, accumulator.getMaxAccum(), mImageName + "_hough-space_residual", mShowResult);
+
+    System.out.println("segments: " + found + ", votes: " + hough.getVotes() + " of " + hough.getEdges() + " edge pixels");
+  }
+
+  // Add distance lines and lines / segments to the original image
+  private void drawLines(ImageProcessor ip, int xC, int yC) {
     ImageProcessor ipTransformed = mOriginalImage.getProcessor();
 
     double x1 = xC, y1 = yC;
@@ -219,6 +440,13 @@ public class HoughTransform implements PlugInFilter {
       ipTransformed.setColor(mRadiusColor);
       ipTransformed.drawLine((int) x1, (int) y1, (int) x2, (int) y2);
 
+      if (line.isSegment()) {
+        int[] segment = line.segment();
+        ipTransformed.setColor(mLineColor);
+        ipTransformed.drawLine(segment[0], segment[1], segment[2], segment[3]);
+        continue;
+      }
+
       // draw line itself
       // ------------------------------------------------------------------->
       // calculate direction vector of line: use vector perpendicular to (x1,y1)->(x2, y2)
@@ -258,46 +486,35 @@ public class HoughTransform implements PlugInFilter {
       ipTransformed.drawLine((int) x2, (int) y2, (int) x3, (int) y3);
       ipTransformed.drawLine((int) x2, (int) y2, (int) x4, (int) y4);
     }
+  }
 
+  private void saveResult(String outputName) {
     mOriginalImage.updateAndDraw();
     if (mShowResult)
       mOriginalImage.show();
-    PNG_Writer png = new PNG_Writer();
-    try {
-      System.out.println("[hough] saving image " + mImageName + "_hough.png");
-      png.writeImage(mOriginalImage, "img/" + mImageName + "_hough.png", 0);
-    } catch (Exception e) {
-      e.printStackTrace();
-    }
-
-    System.out.println("maxAccum: " + maxAccum);
-    System.out.println("Time for Hough space: " + (msSpace - msStart) + " ms");
-    System.out.println("Time for Hough lines: " + (msLines - msSpace) + " ms");
+    System.out.println("[hough] saving image " + outputName + ".png");
+    AsyncImageWriter.getShared().write(mOriginalImage, "img/" + outputName + ".png");
   }
 
-  private static void createImage(int[][] values, float maxValue, String outputName) {
+  private static void createImage(int[] values, int nAng, int nRad, float maxValue, String outputName, boolean showResult) {
     // Create RGB image and fill in Hough space as gray scale image
-    ImagePlus imgAccum = NewImage.createRGBImage(outputName, values.length, values[0].length, 1, NewImage.FILL_BLACK);
+    ImagePlus imgAccum = NewImage.createRGBImage(outputName, nAng, nRad, 1, NewImage.FILL_BLACK);
     ImageProcessor ipAccum = imgAccum.getProcessor();
     int[] rgb = new int[3];
     for (int y = 0; y < ipAccum.getHeight(); y++) {
       for (int x = 0; x < ipAccum.getWidth(); x++) { // Scale Hough space so
                                                      // that
-        rgb[0] = rgb[1] = rgb[2] = (int) (((float) values[x][y] / (float) maxValue) * 255.0f);
+        rgb[0] = rgb[1] = rgb[2] = (int) (((float) values[x * nRad + y] / (float) maxValue) * 255.0f);
         ipAccum.putPixel(x, y, rgb);
       }
     }
 
     // Show and save Hough space image
-    imgAccum.show();
     imgAccum.updateAndDraw();
-    PNG_Writer png = new PNG_Writer();
-    try {
-      System.out.println("[hough] saving image " + outputName + ".png");
-      png.writeImage(imgAccum, "img/" + outputName + ".png", 0);
-    } catch (Exception e) {
-      e.printStackTrace();
-    }
+    if (showResult)
+      imgAccum.show();
+    System.out.println("[hough] saving image " + outputName + ".png");
+    AsyncImageWriter.getShared().write(imgAccum, "img/" + outputName + ".png");
   }
 
 }
@@ -0,0 +1,156 @@
+package imagej_hough;
+
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.TreeSet;
+
+// Persistent line Hough transform for consecutive frames of a video. Each
+// new binary edge map is compared with the previous one: edge pixels that
+// disappeared take their votes back, new ones vote, and unchanged pixels are
+// not touched. The changed cells are tracked per angle as an interval of
+// radii, and only cells within nonMaxR of them are checked again for local
+// maxima. The local maxima are kept ordered by strength, so the strongest
+// lines can be read without scanning the accumulator. Results are the same
+// as a HoughAccumulator / HoughPeaks run from scratch on the same frame.
+public class IncrementalHough {
+
+  private int width;
+  private int height;
+  private int clip; // ignored frame at the image border
+  private int nBand; // angles covered by the accumulator
+  private int nRad;
+  private int nonMaxR;
+  private boolean wrap;
+
+  private HoughAccumulator accumulator;
+  private HoughPeaks peaks;
+  private int[] suppressed; // accumulator with all cells except local maxima set to 0
+  private TreeSet<Long> ranking = new TreeSet<Long>(); // local maxima, strongest first
+  private byte[] previous; // edge map of the last frame (0 / 1)
+  private int[] dirtyFrom; // per angle: range of radii changed by the last frame
+  private int[] dirtyTo;
+  private int changed; // edge pixels added or removed by the last frame
+
+  public IncrementalHough(int width, int height, int clip, int nAng, int nRad, int angFrom, int angTo, int nonMaxR) {
+    this.width = width;
+    this.height = height;
+    this.clip = clip;
+    this.nRad = nRad;
+    this.nonMaxR = nonMaxR;
+    accumulator = new HoughAccumulator(width, height, nAng, nRad, angFrom, angTo);
+    nBand = accumulator.getBandWidth();
+    wrap = accumulator.isFullRange();
+    peaks = new HoughPeaks(nBand, nRad, nonMaxR, wrap);
+    suppressed = new int[nBand * nRad];
+    previous = new byte[width * height];
+    dirtyFrom = new int[nBand];
+    dirtyTo = new int[nBand];
+  }
+
+  // true if this accumulator can take frames of the given size and setup
+  public boolean fits(int width, int height, int nAng, int nRad, int angFrom, int angTo) {
+    return this.width == width && this.height == height && accumulator.getNAng() == nAng && this.nRad == nRad && accumulator.getAngleFrom() == angFrom
+        && nBand == angTo - angFrom;
+  }
+
+  // Apply the next edge map (pixels > 0 are edges); returns the number of
+  // edge pixels that changed since the last frame
+  public int update(byte[] pixels) {
+    Arrays.fill(dirtyFrom, nRad);
+    Arrays.fill(dirtyTo, -1);
+    int xC = accumulator.getCenterX();
+    int yC = accumulator.getCenterY();
+
+    changed = 0;
+    for (int y = clip; y < height - clip; y++) {
+      for (int x = clip, i = y * width + clip; x < width - clip; x++, i++) {
+        byte edge = (pixels[i] != 0) ? (byte) 1 : (byte) 0;
+        if (edge == previous[i])
+          continue;
+        previous[i] = edge;
+        accumulator.vote(x - xC, y - yC, (edge != 0) ? 1 : -1, dirtyFrom, dirtyTo);
+        changed++;
+      }
+    }
+    if (changed > 0)
+      updatePeaks();
+    return changed;
+  }
+
+  // Check all cells within nonMaxR of a changed cell for local maxima again
+  private void updatePeaks() {
+    int[] accum = accumulator.getAccumulator();
+    for (int ang = 0; ang < nBand; ang++) {
+      // union of the changed radii of the neighbouring angles
+      int from = nRad, to = -1;
+      for (int da = -nonMaxR; da <= nonMaxR; da++) {
+        int a = ang + da;
+        if (a >= 0 && a < nBand) {
+          from = Math.min(from, dirtyFrom[a]);
+          to = Math.max(to, dirtyTo[a]);
+        } else if (wrap) { // mirrored radii on the other side of 0 / pi
+          a = (a < 0) ? a + nBand : a - nBand;
+          if (dirtyTo[a] >= 0) {
+            from = Math.min(from, nRad - dirtyTo[a]);
+            to = Math.max(to, nRad - dirtyFrom[a]);
+          }
+        }
+      }
+      if (to < 0)
+        continue;
+
+      for (int rad = Math.max(from - nonMaxR, 0); rad <= Math.min(to + nonMaxR, nRad - 1); rad++) {
+        int cell = ang * nRad + rad;
+        if (suppressed[cell] > 0)
+          ranking.remove(key(suppressed[cell], cell));
+        if (accum[cell] > 0 && peaks.isPeak(accum, ang, rad)) {
+          suppressed[cell] = accum[cell];
+          ranking.add(key(accum[cell], cell));
+        } else {
+          suppressed[cell] = 0;
+        }
+      }
+    }
+  }
+
+  // more votes first, then lower cell
+  private static long key(int votes, int cell) {
+    return ((long) (Integer.MAX_VALUE - votes) << 32) | cell;
+  }
+
+  // Store the up to k strongest local maxima with angle index in [minAng,
+  // maxAng) (relative to the band) in peakAng / peakRad, strongest first;
+  // returns the number found
+  public int getLines(int minAng, int maxAng, int k, int[] peakAng, int[] peakRad) {
+    int found = 0;
+    for (Iterator<Long> it = ranking.iterator(); it.hasNext() && found < k;) {
+      int cell = (int) (it.next() & 0xffffffffL);
+      int ang = cell / nRad;
+      if (ang < minAng || ang >= maxAng)
+        continue;
+      peakAng[found] = ang;
+      peakRad[found] = cell % nRad;
+      found++;
+    }
+    return found;
+  }
+
+  public HoughAccumulator getAccumulator() {
+    return accumulator;
+  }
+
+  // accumulator with all cells except local maxima set to 0
+  public int[] getSuppressed() {
+    return suppressed;
+  }
+
+  // the strongest cell is always a local maximum
+  public int getMaxAccum() {
+    return ranking.isEmpty() ? 0 : Integer.MAX_VALUE - (int) (ranking.first() >>> 32);
+  }
+
+  public int getChanged() {
+    return changed;
+  }
+
+}
@@ -0,0 +1,134 @@
+package imagej_hough;
+
+import java.util.Arrays;
+
+import ij.ImagePlus;
+import ij.gui.NewImage;
+import ij.plugin.filter.PlugInFilter;
+import ij.process.*;
+import imagej_common.AsyncImageWriter;
+import imagej_common.Metrics;
+
+// LaplaceTransform and BinaryTransform in a single pass: computes the 3x3
+// Laplacian of the gray image, thresholds it and collects the edge pixels as
+// a packed list (see EdgePoints) for HoughTransform.setEdgePoints(). The
+// Laplacian comes from column sums over the current three rows, which are
+// updated by one row per step, so no intermediate images are built. The
+// edges are the same as those of the two transforms in a row.
+public class LaplaceEdgeTransform implements PlugInFilter {
+
+  private final static int pixelClip = 2; // clip this amount of pixels from
+                                          // image frame
+  private ImagePlus mInputImage;
+  private String mImageName;
+  private int mThreshold;
+  private boolean mShowResult;
+  private int[] mEdgePoints;
+
+  public LaplaceEdgeTransform(ImagePlus image, int threshold) {
+    mInputImage = image;
+    mThreshold = threshold;
+    mImageName = image.getShortTitle();
+  }
+
+  // Returns the edge pixels; the binary image is only created when the
+  // result is shown
+  public int[] process(boolean showResult) {
+    System.out.println("[edges] processing image " + mImageName);
+    mShowResult = showResult;
+
+    // convert image to grayscale for hough analysis (same conversion as the
+    // separate transforms)
+    ImagePlus gray = mInputImage;
+    if (gray.getType() != ImagePlus.GRAY8) {
+      gray = mInputImage.duplicate();
+      ImageConverter ic = new ImageConverter(gray);
+      ic.convertToGray8();
+    }
+
+    setup("", gray);
+    run(gray.getProcessor());
+
+    return mEdgePoints;
+  }
+
+  public int[] getEdgePoints() {
+    return mEdgePoints;
+  }
+
+  @Override
+  public int setup(String arg, ImagePlus imp) {
+    return DOES_8G;
+  }
+
+  @Override
+  public void run(ImageProcessor ip) {
+    int[] edgePoints = null;
+    Metrics.Span span = Metrics.start("laplace+binary");
+    try {
+      edgePoints = extract((byte[]) ip.getPixels(), ip.getWidth(), ip.getHeight(), mThreshold);
+    } finally {
+      span.end((long) ip.getWidth() * ip.getHeight(), (edgePoints != null) ? edgePoints.length : -1);
+    }
+    mEdgePoints = edgePoints;
+
+    if (mShowResult) {
+      ImagePlus imgBinary = NewImage.createByteImage(mImageName + "_binary", ip.getWidth(), ip.getHeight(), 1, NewImage.FILL_BLACK);
+      byte[] binary = (byte[]) imgBinary.getProcessor().getPixels();
+      int xC = ip.getWidth() / 2, yC = ip.getHeight() / 2;
+      for (int point : mEdgePoints) {
+        binary[(EdgePoints.y(point) + yC) * ip.getWidth() + EdgePoints.x(point) + xC] = (byte) 255;
+      }
+      imgBinary.updateAndDraw();
+      imgBinary.show();
+      System.out.println("[edges] saving image " + mImageName + "_binary.png");
+      AsyncImageWriter.getShared().write(imgBinary, "img/" + mImageName + "_binary.png");
+    }
+  }
+
+  // Pixels (x, y) with x, y in [pixelClip, size - pixelClip) whose Laplacian
+  // (sum of the 8 neighbours - 8 * pixel), clamped to 0..255, is above
+  // threshold
+  static int[] extract(byte[] pixels, int width, int height, int threshold) {
+    int[] points = new int[1024];
+    int count = 0;
+    if (width <= 2 * pixelClip || height <= 2 * pixelClip)
+      return new int[0];
+
+    int xC = width / 2, yC = height / 2;
+    int fromX = pixelClip, toX = width - pixelClip;
+
+    // colSum[x]: sum of the pixels (x, y - 1), (x, y), (x, y + 1)
+    int[] colSum = new int[width];
+    for (int x = fromX - 1; x <= toX; x++) {
+      colSum[x] = (pixels[(pixelClip - 1) * width + x] & 0xff) + (pixels[pixelClip * width + x] & 0xff) + (pixels[(pixelClip + 1) * width + x] & 0xff);
+    }
+
+    for (int y = pixelClip; y < height - pixelClip; y++) {
+      int offset = y * width;
+      int left = colSum[fromX - 1], center = colSum[fromX];
+      for (int x = fromX; x < toX; x++) {
+        int right = colSum[x + 1];
+        int value = left + center + right - 9 * (pixels[offset + x] & 0xff);
+        value = Math.min(255, Math.max(0, value));
+        if (value > threshold) {
+          if (count == points.length)
+            points = Arrays.copyOf(points, 2 * count);
+          points[count++] = EdgePoints.pack(x - xC, y - yC);
+        }
+        left = center;
+        center = right;
+      }
+
+      // move the window down by one row
+      if (y + 2 < height) {
+        int add = (y + 2) * width, remove = (y - 1) * width;
+        for (int x = fromX - 1; x <= toX; x++) {
+          colSum[x] += (pixels[add + x] & 0xff) - (pixels[remove + x] & 0xff);
+        }
+      }
+    }
+    return Arrays.copyOf(points, count);
+  }
+
+}
@@ -2,9 +2,12 @@ package imagej_hough;
 
 import ij.ImagePlus;
 import ij.gui.NewImage;
-import ij.plugin.PNG_Writer;
 import ij.plugin.filter.PlugInFilter;
 import ij.process.*;
+import imagej_common.AsyncImageWriter;
+import imagej_common.Kernel;
+import imagej_common.KernelFilter;
+import imagej_common.Metrics;
 
 public class LaplaceTransform implements PlugInFilter {
 
@@ -16,7 +19,7 @@ public class LaplaceTransform implements PlugInFilter {
   private boolean mShowResult;
 
   public LaplaceTransform(ImagePlus image) {
-    mInputImage = image.duplicate();
+    mInputImage = image;
     mImageName = image.getShortTitle();
   }
 
@@ -24,10 +27,14 @@ public class LaplaceTransform implements PlugInFilter {
     System.out.println("[laplace] processing image " + mImageName);
     mShowResult = showResult;
 
-    // convert image to grayscale for hough analysis
-    ImageConverter ic = new ImageConverter(mInputImage);
-    ic.convertToGray8();
-    mInputImage.updateAndDraw();
+    // convert image to grayscale for hough analysis; gray images are only
+    // read and need no copy
+    if (mInputImage.getType() != ImagePlus.GRAY8) {
+      mInputImage = mInputImage.duplicate();
+      ImageConverter ic = new ImageConverter(mInputImage);
+      ic.convertToGray8();
+      mInputImage.updateAndDraw();
+    }
 
     setup("", mInputImage);
     run(mInputImage.getProcessor());
@@ -46,76 +53,32 @@ public class LaplaceTransform implements PlugInFilter {
     mTransformedImage = NewImage.createRGBImage(mImageName + "_laplace", ip.getWidth(), ip.getHeight(), 1, NewImage.FILL_BLACK);
     ImageProcessor ipTransformed = mTransformedImage.getProcessor();
 
-    // Perform laplace transform and fill new image
-    int[] rgb = new int[3];
-    for (int y = (0 + pixelClip); y < (ip.getHeight() - pixelClip); y++) {
-      for (int x = (0 + pixelClip); x < (ip.getWidth() - pixelClip); x++) {
-        ip.getPixel(x, y, rgb);
-        int pixel = rgb[0];
-        int value = 0;
-        int counter = 0;
-        if (x > 0) {
-          ip.getPixel(x - 1, y, rgb);
-          value += rgb[0];
-          counter++;
-        }
-        if (x < ip.getWidth() - 1) {
-          ip.getPixel(x + 1, y, rgb);
-          value += rgb[0];
-          counter++;
-        }
-        if (y > 0) {
-          ip.getPixel(x, y - 1, rgb);
-          value += rgb[0];
-          counter++;
-          if (x > 0) {
-            ip.getPixel(x - 1, y - 1, rgb);
-            value += rgb[0];
-            counter++;
-          }
-          if (x < ip.getWidth() - 1) {
-            ip.getPixel(x + 1, y - 1, rgb);
-            value += rgb[0];
-            counter++;
-          }
-        }
-        if (y < ip.getHeight() - 1) {
-          ip.getPixel(x, y + 1, rgb);
-          value += rgb[0];
-          counter++;
-          if (x > 0) {
-            ip.getPixel(x - 1, y + 1, rgb);
-            value += rgb[0];
-            counter++;
-          }
-          if (x < ip.getWidth() - 1) {
-            ip.getPixel(x + 1, y + 1, rgb);
-            value += rgb[0];
-            counter++;
-          }
+    // Perform laplace transform and fill new image: raw Laplacian into the
+    // pixel array, then clamped to 0..255 and stored as gray RGB
+    int width = ip.getWidth();
+    Metrics.Span span = Metrics.start("laplace");
+    try {
+      int[] pixels = (int[]) ipTransformed.getPixels();
+      KernelFilter filter = new KernelFilter(Kernel.laplacian());
+      filter.setMargin(pixelClip);
+      filter.apply((byte[]) ip.getPixels(), width, ip.getHeight(), pixels);
+      for (int y = (0 + pixelClip); y < (ip.getHeight() - pixelClip); y++) {
+        for (int x = (0 + pixelClip), i = y * width + x; x < (width - pixelClip); x++, i++) {
+          int newVal = Math.min(255, Math.max(0, pixels[i]));
+          pixels[i] = (newVal << 16) | (newVal << 8) | newVal;
         }
 
-        int newVal = (counter > 0) ? value - counter * pixel : pixel;
-        newVal = Math.max(0, newVal);
-        newVal = Math.min(255, newVal);
-
-        rgb[0] = rgb[1] = rgb[2] = newVal;
-        ipTransformed.putPixel(x, y, rgb);
       }
-
+    } finally {
+      span.end((long) width * ip.getHeight());
     }
 
     // Show and save Laplace transformed image
     mTransformedImage.updateAndDraw();
     if (mShowResult)
       mTransformedImage.show();
-    PNG_Writer png = new PNG_Writer();
-    try {
-      System.out.println("[laplace] saving image " + mImageName + "_laplace.png");
-      png.writeImage(mTransformedImage, "img/" + mImageName + "_laplace.png", 0);
-    } catch (Exception e) {
-      e.printStackTrace();
-    }
+    System.out.println("[laplace] saving image " + mImageName + "_laplace.png");
+    AsyncImageWriter.getShared().write(mTransformedImage, "img/" + mImageName + "_laplace.png");
 
   }
 
@@ -0,0 +1,150 @@
+package imagej_hough;
+
+import java.util.Random;
+
+// Progressive probabilistic Hough transform (Matas, Galambos, Kittler): the
+// edge pixels vote one by one in random order. As soon as a cell reaches the
+// threshold, the line through the pixel is followed along the edge image to
+// find the segment it belongs to. The pixels of the segment are removed from
+// the image and their votes from the accumulator, so later pixels cannot vote
+// for the same line again. Usually only a fraction of the edge pixels have
+// to vote before the requested number of segments is found.
+public class ProbabilisticHough {
+
+  private static final byte NONE = 0; // no edge or already removed
+  private static final byte PENDING = 1; // edge pixel that has not voted yet
+  private static final byte VOTED = 2; // edge pixel whose votes are in the accumulator
+
+  private HoughAccumulator accumulator;
+  private int threshold; // votes for a cell to be significant
+  private int minLength; // min. length of a segment in pixels
+  private int maxGap; // max. gap in pixels between two pixels of a segment
+  private long seed; // seed for the voting order
+  private int votes; // pixels that voted in the last run
+  private int edges; // edge pixels of the last run
+
+  public ProbabilisticHough(HoughAccumulator accumulator, int threshold, int minLength, int maxGap) {
+    this.accumulator = accumulator;
+    this.threshold = threshold;
+    this.minLength = minLength;
+    this.maxGap = maxGap;
+  }
+
+  public void setSeed(long seed) {
+    this.seed = seed;
+  }
+
+  // Find up to maxSegments segments among the pixels > 0 of an 8-bit image,
+  // ignoring a frame of clip pixels at the image border. Segment i is stored
+  // as segments[i] = {x1, y1, x2, y2}, its accumulator cell in lineAng[i]
+  // (relative to the accumulator's angle band) and lineRad[i]. Returns the
+  // number of segments found.
+  public int find(byte[] pixels, int width, int height, int clip, int maxSegments, int[][] segments, int[] lineAng, int[] lineRad) {
+    int nRad = accumulator.getNRad();
+    int xC = accumulator.getCenterX();
+    int yC = accumulator.getCenterY();
+    int[] accum = accumulator.getAccumulator();
+
+    // collect the edge pixels
+    byte[] state = new byte[width * height];
+    int[] points = new int[width * height];
+    int nPoints = 0;
+    for (int y = clip; y < height - clip; y++) {
+      for (int x = clip, i = y * width + clip; x < width - clip; x++, i++) {
+        if (pixels[i] != 0) {
+          state[i] = PENDING;
+          points[nPoints++] = i;
+        }
+      }
+    }
+    edges = nPoints;
+    votes = 0;
+
+    Random random = new Random(seed);
+    int[] end = new int[4]; // end points of the segment in both directions
+    int[] steps = new int[2]; // steps from the seed pixel to the end points
+    int found = 0;
+    // shuffle lazily: each step draws the next pixel from the remaining ones
+    for (int n = nPoints; n > 0 && found < maxSegments; n--) {
+      int j = random.nextInt(n);
+      int point = points[j];
+      points[j] = points[n - 1];
+      points[n - 1] = point;
+      if (state[point] != PENDING)
+        continue;
+
+      int x = point % width;
+      int y = point / width;
+      int cell = accumulator.voteBest(x - xC, y - yC);
+      state[point] = VOTED;
+      votes++;
+      if (cell < 0 || accum[cell] < threshold)
+        continue;
+
+      // follow the line through (x, y) in both directions, one pixel per step
+      // along the major axis, until the gap gets too large
+      double theta = accumulator.angle(cell / nRad);
+      double dx = -Math.sin(theta);
+      double dy = Math.cos(theta);
+      double major = Math.max(Math.abs(dx), Math.abs(dy));
+      dx /= major;
+      dy /= major;
+      for (int k = 0; k < 2; k++) {
+        double sx = (k == 0) ? dx : -dx;
+        double sy = (k == 0) ? dy : -dy;
+        int ex = x, ey = y, last = 0, gap = 0;
+        for (int i = 1;; i++) {
+          int px = (int) Math.round(x + i * sx);
+          int py = (int) Math.round(y + i * sy);
+          if (px < clip || px >= width - clip || py < clip || py >= height - clip)
+            break;
+          if (state[py * width + px] != NONE) {
+            ex = px;
+            ey = py;
+            last = i;
+            gap = 0;
+          } else if (++gap > maxGap) {
+            break;
+          }
+        }
+        end[2 * k] = ex;
+        end[2 * k + 1] = ey;
+        steps[k] = last;
+      }
+      boolean good = Math.max(Math.abs(end[2] - end[0]), Math.abs(end[3] - end[1])) >= minLength;
+
+      // remove the pixels of the segment; those that voted take their votes
+      // back if the segment is accepted
+      for (int k = 0; k < 2; k++) {
+        double sx = (k == 0) ? dx : -dx;
+        double sy = (k == 0) ? dy : -dy;
+        for (int i = (k == 0) ? 0 : 1; i <= steps[k]; i++) {
+          int px = (int) Math.round(x + i * sx);
+          int py = (int) Math.round(y + i * sy);
+          int q = py * width + px;
+          if (state[q] == VOTED && good)
+            accumulator.unvote(px - xC, py - yC);
+          state[q] = NONE;
+        }
+      }
+
+      if (good) {
+        segments[found] = new int[] { end[0], end[1], end[2], end[3] };
+        lineAng[found] = cell / nRad;
+        lineRad[found] = cell % nRad;
+        found++;
+      }
+    }
+    return found;
+  }
+
+  // number of edge pixels that voted in the last run
+  public int getVotes() {
+    return votes;
+  }
+
+  public int getEdges() {
+    return edges;
+  }
+
+}